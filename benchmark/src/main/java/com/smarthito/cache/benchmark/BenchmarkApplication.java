@@ -0,0 +1,69 @@
+package com.smarthito.cache.benchmark;
+
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+/**
+ * 基准测试使用的最小应用，redis连接替换为内存实现
+ *
+ * @author yaojunguang
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@EnableCaching
+@ComponentScan(basePackageClasses = BenchmarkApplication.class)
+public class BenchmarkApplication {
+
+    /**
+     * 组件注册的切面bean名称
+     */
+    private static final String ASPECT_BEAN = "cachingAnnotationsAspect";
+
+    @Bean
+    public RedisConnectionFactory redisConnectionFactory(InMemoryRedis inMemoryRedis) {
+        return inMemoryRedis.getConnectionFactory();
+    }
+
+    /**
+     * 启动应用
+     *
+     * @param redis      共享的内存redis，多个应用共享时模拟多个节点
+     * @param aspect     是否注册调用信息切面
+     * @param properties 额外的配置，格式 key=value
+     * @return 上下文
+     */
+    public static ConfigurableApplicationContext start(InMemoryRedis redis, boolean aspect, String... properties) {
+        return builder(redis, aspect).properties(properties).run();
+    }
+
+    /**
+     * 创建应用，需要额外的配置或bean时使用
+     *
+     * @param redis  共享的内存redis
+     * @param aspect 是否注册调用信息切面
+     * @return 未启动的应用
+     */
+    public static SpringApplicationBuilder builder(InMemoryRedis redis, boolean aspect) {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties("spring.main.banner-mode=off",
+                        "logging.level.root=warn",
+                        "spring.cache.redis.plus.enabled=true")
+                .initializers(context -> context.getBeanFactory().registerSingleton("inMemoryRedis", redis));
+        if (!aspect) {
+            builder.initializers(context -> context.addBeanFactoryPostProcessor((BeanFactoryPostProcessor) beanFactory ->
+                    ((BeanDefinitionRegistry) beanFactory).removeBeanDefinition(ASPECT_BEAN)));
+        }
+        return builder;
+    }
+}
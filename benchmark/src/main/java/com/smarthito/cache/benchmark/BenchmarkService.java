@@ -0,0 +1,35 @@
+package com.smarthito.cache.benchmark;
+
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基准测试使用的缓存方法
+ *
+ * @author yaojunguang
+ */
+@Service
+public class BenchmarkService {
+
+    /**
+     * 缓存参数，带刷新窗口，命中时需要同时读取剩余时间
+     */
+    public static final String CACHE_USER = "bench:user#3600#600";
+
+    private final LongAdder loads = new LongAdder();
+
+    @Cacheable(value = CACHE_USER, key = "#id")
+    public BenchmarkUser find(long id) {
+        loads.increment();
+        return new BenchmarkUser(id);
+    }
+
+    /**
+     * @return 方法实际执行次数
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+}
@@ -0,0 +1,46 @@
+package com.smarthito.cache.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 基准测试使用的缓存值
+ *
+ * @author yaojunguang
+ */
+public class BenchmarkUser {
+
+    private long id;
+
+    private String name;
+
+    private List<String> tags;
+
+    private LocalDateTime createdAt;
+
+    public BenchmarkUser() {
+    }
+
+    public BenchmarkUser(long id) {
+        this.id = id;
+        this.name = "user-" + id;
+        this.tags = List.of("spring", "cache", "redis", "tag-" + (id % 16));
+        this.createdAt = LocalDateTime.of(2024, 1, 1, 0, 0).plusSeconds(id);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
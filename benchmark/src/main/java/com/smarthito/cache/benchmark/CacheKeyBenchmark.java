@@ -0,0 +1,90 @@
+package com.smarthito.cache.benchmark;
+
+import com.smarthito.cache.cache.expression.CacheOperationExpressionEvaluator;
+import com.smarthito.cache.generator.HyphenKeyGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.interceptor.SimpleKeyGenerator;
+import org.springframework.context.expression.AnnotatedElementKey;
+import org.springframework.expression.EvaluationContext;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存key的计算：hyphenKeyGenerator、SpEL表达式(刷新时按注解重新计算key使用同一个求值器)，
+ * spring默认的SimpleKeyGenerator作为对照
+ *
+ * @author yaojunguang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheKeyBenchmark {
+
+    private final BenchmarkService target = new BenchmarkService();
+
+    private final Object[] args = {10086L};
+
+    private final HyphenKeyGenerator hyphenKeyGenerator = new HyphenKeyGenerator();
+
+    private final CacheOperationExpressionEvaluator evaluator = new CacheOperationExpressionEvaluator();
+
+    private Method method;
+
+    private AnnotatedElementKey methodKey;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        method = BenchmarkService.class.getMethod("find", long.class);
+        methodKey = new AnnotatedElementKey(method, BenchmarkService.class);
+    }
+
+    @Benchmark
+    public Object hyphen() {
+        return hyphenKeyGenerator.generate(target, method, args);
+    }
+
+    @Benchmark
+    public Object simpleKey() {
+        return SimpleKeyGenerator.generateKey(args);
+    }
+
+    @Benchmark
+    public Object spel(KeyExpression key) {
+        EvaluationContext context = evaluator.createEvaluationContext(List.of(), method, args, target,
+                BenchmarkService.class, null);
+        return evaluator.key(key.expression, methodKey, context);
+    }
+
+    /**
+     * SpEL表达式，只用于spel
+     */
+    @State(Scope.Benchmark)
+    public static class KeyExpression {
+
+        @Param({"#id", "'user:' + #id + ':' + #root.methodName"})
+        private String expression;
+
+        @Setup
+        public void verify(CacheKeyBenchmark benchmark) {
+            if (Objects.isNull(benchmark.spel(this))) {
+                throw new IllegalStateException("表达式结果为null，编译时需要保留参数名：" + expression);
+            }
+        }
+    }
+}
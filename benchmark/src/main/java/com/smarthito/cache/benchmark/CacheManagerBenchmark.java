@@ -0,0 +1,59 @@
+package com.smarthito.cache.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次缓存操作都会调用的getCache查找，缓存参数写在名称里，查找的是完整的参数字符串
+ *
+ * @author yaojunguang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheManagerBenchmark {
+
+    @Param({BenchmarkService.CACHE_USER, "bench:user#3600#600#local=1000#envelope#xfetch=1.5"})
+    private String spec;
+
+    private ConfigurableApplicationContext context;
+
+    private CacheManager cacheManager;
+
+    @Setup
+    public void start() {
+        context = BenchmarkApplication.start(new InMemoryRedis(), true);
+        cacheManager = context.getBean(CacheManager.class);
+        if (cacheManager.getCache(spec) == null) {
+            throw new IllegalStateException("缓存不存在：" + spec);
+        }
+    }
+
+    @TearDown
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public Cache getCache() {
+        return cacheManager.getCache(spec);
+    }
+}
@@ -0,0 +1,84 @@
+package com.smarthito.cache.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存值的序列化和反序列化，序列化器取自按缓存参数创建的缓存，与实际读写使用的完全相同
+ * <p>
+ * java -jar target/benchmarks.jar CacheValueSerializerBenchmark -prof gc
+ *
+ * @author yaojunguang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheValueSerializerBenchmark {
+
+    @Param({"codec=json", "codec=smile", "codec=smile#compress=256"})
+    private String options;
+
+    @Param({"1", "20"})
+    private int size;
+
+    private ConfigurableApplicationContext context;
+
+    private RedisSerializationContext.SerializationPair<Object> serializationPair;
+
+    private Object value;
+
+    private ByteBuffer bytes;
+
+    @Setup
+    public void start() {
+        context = BenchmarkApplication.start(new InMemoryRedis(), true);
+        RedisCache cache = (RedisCache) context.getBean(CacheManager.class).getCache("bench:value#3600#0#" + options);
+        serializationPair = cache.getCacheConfiguration().getValueSerializationPair();
+        List<BenchmarkUser> users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            users.add(new BenchmarkUser(i));
+        }
+        value = users;
+        bytes = serializationPair.write(value);
+        if (!(serializationPair.read(bytes.duplicate()) instanceof List<?> list) || list.size() != size) {
+            throw new IllegalStateException("反序列化结果不一致：" + options);
+        }
+    }
+
+    @TearDown
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public ByteBuffer serialize() {
+        return serializationPair.write(value);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializationPair.read(bytes.duplicate());
+    }
+}
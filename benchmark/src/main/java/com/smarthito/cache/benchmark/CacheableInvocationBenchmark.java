@@ -0,0 +1,67 @@
+package com.smarthito.cache.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存命中时一次@Cacheable调用的完整开销：代理、调用信息切面、spring缓存拦截器、key计算、
+ * getCache查找、读取缓存值和剩余时间、反序列化；redis使用内存实现，结果不包含网络往返
+ * aspect=false时移除调用信息切面，两者的差就是切面的开销
+ * <p>
+ * java -jar target/benchmarks.jar CacheableInvocationBenchmark -prof gc
+ *
+ * @author yaojunguang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheableInvocationBenchmark {
+
+    private static final int KEYS = 1024;
+
+    @Param({"true", "false"})
+    private boolean aspect;
+
+    private ConfigurableApplicationContext context;
+
+    private BenchmarkService service;
+
+    @Setup
+    public void start() {
+        context = BenchmarkApplication.start(new InMemoryRedis(), aspect);
+        service = context.getBean(BenchmarkService.class);
+        for (int id = 0; id < KEYS; id++) {
+            service.find(id);
+        }
+    }
+
+    @TearDown
+    public void stop() {
+        if (service.getLoadCount() != KEYS) {
+            throw new IllegalStateException("缓存没有命中，方法执行了" + service.getLoadCount() + "次");
+        }
+        context.close();
+    }
+
+    @Benchmark
+    public BenchmarkUser hit() {
+        return service.find(ThreadLocalRandom.current().nextInt(KEYS));
+    }
+}
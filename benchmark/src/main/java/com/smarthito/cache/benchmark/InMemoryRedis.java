@@ -0,0 +1,645 @@
+package com.smarthito.cache.benchmark;
+
+import com.smarthito.cache.script.LuaScript;
+import com.smarthito.cache.script.LuaScripts;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.connection.util.AbstractSubscription;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * 内存中的redis替身，只实现本组件用到的命令，用于不依赖redis服务的基准测试
+ * 连接和连接工厂都是动态代理，未实现的命令抛出UnsupportedOperationException；
+ * 本组件的lua脚本按摘要识别后用java实现，结果格式与redis返回的一致；
+ * 有序集合只支持定时刷新用到的写入、删除，不过期；
+ * 订阅与jedis一样阻塞调用线程，消息在发布线程上同步投递；
+ * 按名称统计命令次数，可以给每个命令加上固定延迟模拟网络往返
+ * 多个应用共享同一个实例时相当于多个节点连接同一个redis
+ *
+ * @author yaojunguang
+ */
+public class InMemoryRedis {
+
+    private static final long NO_EXPIRE = Long.MAX_VALUE;
+
+    /**
+     * 连接本身的方法，不是发送到redis的命令，不计数也不模拟延迟
+     */
+    private static final Set<String> CONNECTION_METHODS = Set.of("close", "isClosed", "isPipelined", "isQueueing",
+            "isSubscribed", "getSubscription", "getNativeConnection", "openPipeline", "closePipeline",
+            "toString", "hashCode", "equals");
+
+    private final Map<ByteBuffer, Entry> store = new ConcurrentHashMap<>(1024);
+
+    /**
+     * 有序集合，key -> 成员 -> 分数，脚本涉及多个集合，所有有序集合的操作都在zsets上同步
+     */
+    private final Map<ByteBuffer, Map<ByteBuffer, Double>> zsets = new ConcurrentHashMap<>();
+
+    private final Map<String, Function<byte[][], Object>> scripts = new HashMap<>();
+
+    private final Map<String, String> scriptNames = new HashMap<>();
+
+    private final Map<ByteBuffer, Set<InMemorySubscription>> subscriptions = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> commandCounts = new ConcurrentHashMap<>();
+
+    private volatile long commandLatencyNanos;
+
+    private final Constructor<?> connectionConstructor;
+
+    private final RedisConnectionFactory connectionFactory;
+
+    public InMemoryRedis() {
+        scripts.put(LuaScripts.GET_WITH_TTL.getSha1(), this::getWithTtl);
+        scripts.put(LuaScripts.MGET_WITH_TTL.getSha1(), this::mgetWithTtl);
+        scripts.put(LuaScripts.MSET_WITH_TTL.getSha1(), this::msetWithTtl);
+        scripts.put(LuaScripts.UNLOCK.getSha1(), this::unlock);
+        scripts.put(LuaScripts.UNLOCK_PUBLISH.getSha1(), this::unlockPublish);
+        scripts.put(LuaScripts.RENEW.getSha1(), this::renew);
+        scripts.put(LuaScripts.SCHEDULE_CLAIM.getSha1(), this::scheduleClaim);
+        scripts.put(LuaScripts.SCHEDULE_COMPLETE.getSha1(), this::scheduleComplete);
+        scripts.put(LuaScripts.SCHEDULE_TOUCH.getSha1(), this::scheduleTouch);
+        for (LuaScript script : LuaScripts.ALL) {
+            if (!scripts.containsKey(script.getSha1())) {
+                throw new IllegalStateException("没有实现脚本：" + script);
+            }
+            scriptNames.put(script.getSha1(), script.getName());
+        }
+        try {
+            connectionConstructor = Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{RedisConnection.class},
+                    (proxy, method, args) -> null).getClass().getConstructor(InvocationHandler.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+        connectionFactory = (RedisConnectionFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{RedisConnectionFactory.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getConnection" -> newConnection();
+                    case "getConvertPipelineAndTxResults" -> true;
+                    case "translateExceptionIfPossible" -> null;
+                    case "toString" -> "InMemoryRedisConnectionFactory";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    public RedisConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    /**
+     * @return 未过期的key数量
+     */
+    public int size() {
+        long now = System.currentTimeMillis();
+        store.values().removeIf(entry -> entry.isExpired(now));
+        return store.size();
+    }
+
+    public void clear() {
+        store.clear();
+        zsets.clear();
+    }
+
+    /**
+     * 模拟网络往返，每个命令执行前等待
+     *
+     * @param nanos 延迟，纳秒，0不等待
+     */
+    public void setCommandLatency(long nanos) {
+        this.commandLatencyNanos = nanos;
+    }
+
+    /**
+     * @return 命令名称(脚本为 evalSha:脚本名称)到执行次数
+     */
+    public Map<String, Long> getCommandCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        commandCounts.forEach((name, count) -> counts.put(name, count.sum()));
+        return counts;
+    }
+
+    private void onCommand(String name, Object[] args) {
+        if ("evalSha".equals(name) || "eval".equals(name)) {
+            String sha = args[0] instanceof String value ? value
+                    : "eval".equals(name) ? sha1((byte[]) args[0]) : new String((byte[]) args[0], StandardCharsets.US_ASCII);
+            name = name + ":" + scriptNames.getOrDefault(sha, sha);
+        }
+        commandCounts.computeIfAbsent(name, key -> new LongAdder()).increment();
+        long latency = commandLatencyNanos;
+        if (latency > 0 && !"subscribe".equals(name)) {
+            LockSupport.parkNanos(latency);
+        }
+    }
+
+    private RedisConnection newConnection() {
+        try {
+            return (RedisConnection) connectionConstructor.newInstance(new Connection());
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long publish(byte[] channel, byte[] message) {
+        Set<InMemorySubscription> subscribers = subscriptions.get(ByteBuffer.wrap(channel));
+        if (subscribers == null) {
+            return 0;
+        }
+        for (InMemorySubscription subscriber : subscribers) {
+            subscriber.getListener().onMessage(new DefaultMessage(channel, message), null);
+        }
+        return subscribers.size();
+    }
+
+    private Entry getEntry(byte[] key) {
+        ByteBuffer buffer = ByteBuffer.wrap(key);
+        Entry entry = store.get(buffer);
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            store.remove(buffer, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private byte[] get(byte[] key) {
+        Entry entry = getEntry(key);
+        return entry == null ? null : entry.value;
+    }
+
+    private byte[] getEx(byte[] key, Expiration expiration) {
+        Entry entry = getEntry(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!expiration.isKeepTtl()) {
+            store.replace(ByteBuffer.wrap(key), entry, new Entry(entry.value, expireAt(expiration)));
+        }
+        return entry.value;
+    }
+
+    private List<byte[]> mGet(byte[][] keys) {
+        List<byte[]> result = new ArrayList<>(keys.length);
+        for (byte[] key : keys) {
+            result.add(get(key));
+        }
+        return result;
+    }
+
+    private Boolean set(byte[] key, byte[] value, Expiration expiration, RedisStringCommands.SetOption option) {
+        ByteBuffer buffer = ByteBuffer.wrap(key);
+        Entry entry = new Entry(value, expireAt(expiration));
+        if (option == RedisStringCommands.SetOption.SET_IF_ABSENT) {
+            long now = System.currentTimeMillis();
+            Entry current = store.compute(buffer, (k, old) -> old == null || old.isExpired(now) ? entry : old);
+            return current == entry;
+        }
+        if (option == RedisStringCommands.SetOption.SET_IF_PRESENT) {
+            return store.computeIfPresent(buffer, (k, old) -> entry) == entry;
+        }
+        store.put(buffer, entry);
+        return true;
+    }
+
+    private long del(byte[][] keys) {
+        long count = 0;
+        for (byte[] key : keys) {
+            count += getEntry(key) != null && store.remove(ByteBuffer.wrap(key)) != null ? 1 : 0;
+            count += zsets.remove(ByteBuffer.wrap(key)) != null ? 1 : 0;
+        }
+        return count;
+    }
+
+    private boolean zAdd(byte[] key, double score, byte[] member) {
+        synchronized (zsets) {
+            return zsets.computeIfAbsent(ByteBuffer.wrap(key.clone()), k -> new HashMap<>())
+                    .put(ByteBuffer.wrap(member.clone()), score) == null;
+        }
+    }
+
+    private long zRem(byte[] key, byte[]... members) {
+        synchronized (zsets) {
+            Map<ByteBuffer, Double> zset = zsets.get(ByteBuffer.wrap(key));
+            if (zset == null) {
+                return 0;
+            }
+            long count = 0;
+            for (byte[] member : members) {
+                count += zset.remove(ByteBuffer.wrap(member)) != null ? 1 : 0;
+            }
+            return count;
+        }
+    }
+
+    private Double zScore(byte[] key, byte[] member) {
+        Map<ByteBuffer, Double> zset = zsets.get(ByteBuffer.wrap(key));
+        return zset == null ? null : zset.get(ByteBuffer.wrap(member));
+    }
+
+    private long pTtl(byte[] key) {
+        Entry entry = getEntry(key);
+        if (entry == null) {
+            return -2;
+        }
+        return entry.expireAt == NO_EXPIRE ? -1 : Math.max(0, entry.expireAt - System.currentTimeMillis());
+    }
+
+    private static long toUnit(long millis, TimeUnit unit) {
+        return millis < 0 ? millis : unit.convert(millis, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean pExpire(byte[] key, long millis) {
+        Entry entry = getEntry(key);
+        return entry != null && store.replace(ByteBuffer.wrap(key), entry,
+                new Entry(entry.value, millis < 0 ? NO_EXPIRE : System.currentTimeMillis() + millis));
+    }
+
+    private Set<byte[]> keys(byte[] pattern) {
+        Pattern regex = Pattern.compile(globToRegex(new String(pattern, StandardCharsets.UTF_8)));
+        Set<byte[]> result = new LinkedHashSet<>();
+        long now = System.currentTimeMillis();
+        store.forEach((key, entry) -> {
+            byte[] bytes = new byte[key.remaining()];
+            key.duplicate().get(bytes);
+            if (!entry.isExpired(now) && regex.matcher(new String(bytes, StandardCharsets.UTF_8)).matches()) {
+                result.add(bytes);
+            }
+        });
+        return result;
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+
+    private Object evalSha(String sha, byte[][] keysAndArgs) {
+        Function<byte[][], Object> script = scripts.get(sha);
+        if (script == null) {
+            throw new UnsupportedOperationException("NOSCRIPT " + sha);
+        }
+        return script.apply(keysAndArgs);
+    }
+
+    private List<Object> getWithTtl(byte[][] keysAndArgs) {
+        return Arrays.asList(get(keysAndArgs[0]), pTtl(keysAndArgs[0]));
+    }
+
+    private List<Object> mgetWithTtl(byte[][] keys) {
+        List<Object> result = new ArrayList<>(keys.length * 2);
+        for (byte[] key : keys) {
+            result.add(get(key));
+            result.add(pTtl(key));
+        }
+        return result;
+    }
+
+    /**
+     * 批量写入时 keysAndArgs = key1..keyN, 值1..值N, 有效时间1..有效时间N
+     */
+    private Long msetWithTtl(byte[][] keysAndArgs) {
+        int n = keysAndArgs.length / 3;
+        for (int i = 0; i < n; i++) {
+            long ttl = Long.parseLong(new String(keysAndArgs[2 * n + i], StandardCharsets.US_ASCII));
+            set(keysAndArgs[i], keysAndArgs[n + i], ttl > 0 ? Expiration.milliseconds(ttl) : Expiration.persistent(),
+                    RedisStringCommands.SetOption.upsert());
+        }
+        return (long) n;
+    }
+
+    private Long unlock(byte[][] keysAndArgs) {
+        ByteBuffer key = ByteBuffer.wrap(keysAndArgs[0]);
+        Entry entry = getEntry(keysAndArgs[0]);
+        return entry != null && Arrays.equals(entry.value, keysAndArgs[1]) && store.remove(key, entry) ? 1L : 0L;
+    }
+
+    private Long unlockPublish(byte[][] keysAndArgs) {
+        if (unlock(keysAndArgs) == 0) {
+            return 0L;
+        }
+        publish(keysAndArgs[2], keysAndArgs[0]);
+        return 1L;
+    }
+
+    private Long renew(byte[][] keysAndArgs) {
+        Entry entry = getEntry(keysAndArgs[0]);
+        if (entry == null || !Arrays.equals(entry.value, keysAndArgs[1])) {
+            return 0L;
+        }
+        long millis = Long.parseLong(new String(keysAndArgs[2], StandardCharsets.US_ASCII));
+        return pExpire(keysAndArgs[0], millis) ? 1L : 0L;
+    }
+
+    /**
+     * 领取到期的成员：keysAndArgs = 刷新计划, 最后读取时间, 当前时间, 最多个数, 租约到期时间, 最早的读取时间
+     */
+    private List<Object> scheduleClaim(byte[][] keysAndArgs) {
+        double now = Double.parseDouble(new String(keysAndArgs[2], StandardCharsets.US_ASCII));
+        int limit = Integer.parseInt(new String(keysAndArgs[3], StandardCharsets.US_ASCII));
+        double lease = Double.parseDouble(new String(keysAndArgs[4], StandardCharsets.US_ASCII));
+        double accessedAfter = Double.parseDouble(new String(keysAndArgs[5], StandardCharsets.US_ASCII));
+        synchronized (zsets) {
+            Map<ByteBuffer, Double> zset = zsets.get(ByteBuffer.wrap(keysAndArgs[0]));
+            if (zset == null) {
+                return List.of(0L);
+            }
+            List<ByteBuffer> due = zset.entrySet().stream().filter(entry -> entry.getValue() <= now)
+                    .sorted(Map.Entry.comparingByValue()).limit(limit).map(Map.Entry::getKey).toList();
+            List<Object> result = new ArrayList<>(due.size() + 1);
+            result.add((long) due.size());
+            for (ByteBuffer member : due) {
+                byte[] bytes = new byte[member.remaining()];
+                member.duplicate().get(bytes);
+                Double accessed = zScore(keysAndArgs[1], bytes);
+                if (accessed != null && accessed >= accessedAfter) {
+                    zset.put(member, lease);
+                    result.add(bytes);
+                } else {
+                    zset.remove(member);
+                    zRem(keysAndArgs[1], bytes);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 分数仍然是租约时删除：keysAndArgs = 刷新计划, 最后读取时间, 成员, 租约到期时间
+     */
+    private Long scheduleComplete(byte[][] keysAndArgs) {
+        double lease = Double.parseDouble(new String(keysAndArgs[3], StandardCharsets.US_ASCII));
+        synchronized (zsets) {
+            Map<ByteBuffer, Double> zset = zsets.get(ByteBuffer.wrap(keysAndArgs[0]));
+            if (zset == null || !zset.remove(ByteBuffer.wrap(keysAndArgs[2]), lease)) {
+                return 0L;
+            }
+            zRem(keysAndArgs[1], keysAndArgs[2]);
+            return 1L;
+        }
+    }
+
+    /**
+     * 记录仍在刷新计划中的成员的读取时间：keysAndArgs = 刷新计划, 最后读取时间, 读取时间, 成员...
+     */
+    private Long scheduleTouch(byte[][] keysAndArgs) {
+        double now = Double.parseDouble(new String(keysAndArgs[2], StandardCharsets.US_ASCII));
+        long count = 0;
+        synchronized (zsets) {
+            for (int i = 3; i < keysAndArgs.length; i++) {
+                if (zScore(keysAndArgs[0], keysAndArgs[i]) != null) {
+                    zAdd(keysAndArgs[1], now, keysAndArgs[i]);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static long expireAt(Expiration expiration) {
+        if (expiration == null || expiration.isPersistent()) {
+            return NO_EXPIRE;
+        }
+        if (expiration.isUnixTimestamp()) {
+            return expiration.getExpirationTimeInMilliseconds();
+        }
+        return System.currentTimeMillis() + expiration.getExpirationTimeInMilliseconds();
+    }
+
+    private static String sha1(byte[] source) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(source));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 一个连接，只有订阅状态是连接自己的
+     */
+    private final class Connection implements InvocationHandler {
+
+        private volatile InMemorySubscription subscription;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            int argc = args == null ? 0 : args.length;
+            if (argc == 0 && name.endsWith("Commands") && method.getReturnType().isInstance(proxy)) {
+                return proxy;
+            }
+            if (!CONNECTION_METHODS.contains(name)) {
+                onCommand(name, args);
+            }
+            switch (name) {
+                case "get":
+                    return get((byte[]) args[0]);
+                case "getEx":
+                    return getEx((byte[]) args[0], (Expiration) args[1]);
+                case "mGet":
+                    return mGet((byte[][]) args[0]);
+                case "set":
+                    if (argc == 2) {
+                        return set((byte[]) args[0], (byte[]) args[1], Expiration.persistent(), RedisStringCommands.SetOption.upsert());
+                    }
+                    return set((byte[]) args[0], (byte[]) args[1], (Expiration) args[2], (RedisStringCommands.SetOption) args[3]);
+                case "setNX":
+                    return set((byte[]) args[0], (byte[]) args[1], Expiration.persistent(), RedisStringCommands.SetOption.ifAbsent());
+                case "setEx":
+                    return set((byte[]) args[0], (byte[]) args[2], Expiration.seconds((Long) args[1]), RedisStringCommands.SetOption.upsert());
+                case "pSetEx":
+                    return set((byte[]) args[0], (byte[]) args[2], Expiration.milliseconds((Long) args[1]), RedisStringCommands.SetOption.upsert());
+                case "del":
+                case "unlink":
+                    return del((byte[][]) args[0]);
+                case "exists":
+                    if (args[0] instanceof byte[] key) {
+                        return getEntry(key) != null;
+                    }
+                    long count = 0;
+                    for (byte[] key : (byte[][]) args[0]) {
+                        count += getEntry(key) == null ? 0 : 1;
+                    }
+                    return count;
+                case "pTtl":
+                    return toUnit(pTtl((byte[]) args[0]), argc > 1 ? (TimeUnit) args[1] : TimeUnit.MILLISECONDS);
+                case "ttl":
+                    return toUnit(pTtl((byte[]) args[0]), argc > 1 ? (TimeUnit) args[1] : TimeUnit.SECONDS);
+                case "expire":
+                    return pExpire((byte[]) args[0], TimeUnit.SECONDS.toMillis((Long) args[1]));
+                case "pExpire":
+                    return pExpire((byte[]) args[0], (Long) args[1]);
+                case "persist":
+                    return pExpire((byte[]) args[0], -1);
+                case "keys":
+                    return keys((byte[]) args[0]);
+                case "zAdd":
+                    if (args[1] instanceof Set<?> tuples) {
+                        long added = 0;
+                        for (Object tuple : tuples) {
+                            added += zAdd((byte[]) args[0], ((Tuple) tuple).getScore(), ((Tuple) tuple).getValue()) ? 1 : 0;
+                        }
+                        return added;
+                    }
+                    return zAdd((byte[]) args[0], (Double) args[1], (byte[]) args[2]);
+                case "zRem":
+                    return zRem((byte[]) args[0], (byte[][]) args[1]);
+                case "evalSha":
+                    return evalSha(args[0] instanceof String sha ? sha : new String((byte[]) args[0], StandardCharsets.US_ASCII),
+                            (byte[][]) args[3]);
+                case "eval":
+                    return evalSha(sha1((byte[]) args[0]), (byte[][]) args[3]);
+                case "scriptLoad":
+                    return sha1((byte[]) args[0]);
+                case "publish":
+                    return publish((byte[]) args[0], (byte[]) args[1]);
+                case "subscribe":
+                    subscribe((MessageListener) args[0], (byte[][]) args[1]);
+                    return null;
+                case "getSubscription":
+                    return subscription;
+                case "dbSize":
+                    return (long) size();
+                case "flushDb":
+                case "flushAll":
+                    clear();
+                    return null;
+                case "closePipeline":
+                    return List.of();
+                case "openPipeline":
+                    return null;
+                case "close":
+                    if (subscription != null) {
+                        subscription.close();
+                    }
+                    return null;
+                case "isSubscribed":
+                    return subscription != null && subscription.isAlive();
+                case "isClosed":
+                case "isPipelined":
+                case "isQueueing":
+                    return false;
+                case "getNativeConnection":
+                    return InMemoryRedis.this;
+                case "toString":
+                    return "InMemoryRedisConnection";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(name);
+            }
+        }
+
+        /**
+         * 订阅并阻塞，直到取消全部订阅或者连接关闭
+         */
+        private void subscribe(MessageListener listener, byte[][] channels) throws InterruptedException {
+            if (subscription != null && subscription.isAlive()) {
+                throw new IllegalStateException("连接已经订阅");
+            }
+            InMemorySubscription current = new InMemorySubscription(listener);
+            subscription = current;
+            current.subscribe(channels);
+            current.closed.await();
+        }
+    }
+
+    /**
+     * 订阅，频道登记在共享的订阅表里
+     */
+    private final class InMemorySubscription extends AbstractSubscription {
+
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        private InMemorySubscription(MessageListener listener) {
+            super(listener);
+        }
+
+        @Override
+        protected void doSubscribe(byte[]... channels) {
+            for (byte[] channel : channels) {
+                subscriptions.computeIfAbsent(ByteBuffer.wrap(channel.clone()), key -> new CopyOnWriteArraySet<>()).add(this);
+                if (getListener() instanceof SubscriptionListener listener) {
+                    listener.onChannelSubscribed(channel, getChannels().size() + 1L);
+                }
+            }
+        }
+
+        @Override
+        protected void doUnsubscribe(boolean all, byte[]... channels) {
+            for (byte[] channel : all ? getChannels().toArray(new byte[0][]) : channels) {
+                Set<InMemorySubscription> subscribers = subscriptions.get(ByteBuffer.wrap(channel));
+                if (subscribers != null) {
+                    subscribers.remove(this);
+                }
+                if (getListener() instanceof SubscriptionListener listener) {
+                    listener.onChannelUnsubscribed(channel, 0);
+                }
+            }
+        }
+
+        @Override
+        protected void doPsubscribe(byte[]... patterns) {
+            throw new UnsupportedOperationException("pSubscribe");
+        }
+
+        @Override
+        protected void doPUnsubscribe(boolean all, byte[]... patterns) {
+        }
+
+        @Override
+        protected void doClose() {
+            subscriptions.values().forEach(subscribers -> subscribers.remove(this));
+            closed.countDown();
+        }
+    }
+
+    private record Entry(byte[] value, long expireAt) {
+
+        boolean isExpired(long now) {
+            return expireAt <= now;
+        }
+    }
+}
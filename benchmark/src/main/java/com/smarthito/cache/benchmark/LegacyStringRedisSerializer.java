@@ -0,0 +1,47 @@
+package com.smarthito.cache.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 优化前的key序列化器，作为对照组
+ *
+ * @author yaojunguang
+ */
+public class LegacyStringRedisSerializer implements RedisSerializer<String> {
+
+    private final static String TARGET = "\"";
+
+    private final static String REPLACEMENT = "";
+
+    private final static String SIMPLE_KEY = "SimpleKey [";
+
+    @Override
+    public String deserialize(byte[] bytes) {
+        return (bytes == null ? null : new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public byte[] serialize(String object) {
+        if (object == null) {
+            return null;
+        }
+        if (object.contains(SIMPLE_KEY)) {
+            int index = object.lastIndexOf(":");
+            if (index > 0) {
+                object = object.substring(0, index + 1) + "{}";
+            }
+        }
+        try {
+            String string = new ObjectMapper().writeValueAsString(object);
+            string = string.replace(TARGET, REPLACEMENT);
+            return string.getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+}
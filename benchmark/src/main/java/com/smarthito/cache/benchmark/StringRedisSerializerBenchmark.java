@@ -0,0 +1,57 @@
+package com.smarthito.cache.benchmark;
+
+import com.smarthito.cache.serializer.StringRedisSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * key序列化器对比，运行时加上 -prof gc 可以看到每次调用的分配字节数
+ * <p>
+ * java -jar target/benchmarks.jar StringRedisSerializerBenchmark -prof gc
+ *
+ * @author yaojunguang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringRedisSerializerBenchmark {
+
+    @Param({"cache:user:10086", "cache:subject:recommend:SimpleKey [1, 2]", "cache:search:\"spring\\cache\""})
+    private String key;
+
+    private final StringRedisSerializer serializer = new StringRedisSerializer();
+
+    private final LegacyStringRedisSerializer legacySerializer = new LegacyStringRedisSerializer();
+
+    @Setup
+    public void verify() {
+        if (!Arrays.equals(serializer.serialize(key), legacySerializer.serialize(key))) {
+            throw new IllegalStateException("序列化结果不一致：" + key);
+        }
+    }
+
+    @Benchmark
+    public byte[] current() {
+        return serializer.serialize(key);
+    }
+
+    @Benchmark
+    public byte[] legacy() {
+        return legacySerializer.serialize(key);
+    }
+}
@@ -0,0 +1,92 @@
+package com.smarthito.cache.benchmark.simulator;
+
+import com.smarthito.cache.benchmark.BenchmarkUser;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 模拟的数据访问，方法执行时按配置的延迟等待
+ * 缓存的过期时间和刷新时间从配置读取，配置项使用 spring.cache.redis.plus.caches[缓存名称]
+ *
+ * @author yaojunguang
+ */
+@Service
+public class SimulatedRepository {
+
+    public static final String ITEM = "item";
+
+    public static final String LIST = "list";
+
+    public static final String CACHE_ITEM = "sim:item";
+
+    public static final String CACHE_LIST = "sim:list";
+
+    private static final int LIST_SIZE = 10;
+
+    @Value("${simulation.loader.latency-ms:20}")
+    private long latencyMillis;
+
+    @Value("${simulation.loader.jitter-ms:10}")
+    private long jitterMillis;
+
+    private final Map<String, LongAdder> loads = Map.of(CACHE_ITEM, new LongAdder(), CACHE_LIST, new LongAdder());
+
+    @Cacheable(value = CACHE_ITEM + "#${simulation.item.ttl:300}#${simulation.item.preload:60}", key = "#key")
+    public BenchmarkUser item(String key) throws InterruptedException {
+        load(CACHE_ITEM);
+        return new BenchmarkUser(key.hashCode());
+    }
+
+    @Cacheable(value = CACHE_LIST + "#${simulation.list.ttl:60}#${simulation.list.preload:20}", key = "#key")
+    public List<BenchmarkUser> list(String key) throws InterruptedException {
+        load(CACHE_LIST);
+        List<BenchmarkUser> users = new ArrayList<>(LIST_SIZE);
+        for (int i = 0; i < LIST_SIZE; i++) {
+            users.add(new BenchmarkUser(key.hashCode() * 31L + i));
+        }
+        return users;
+    }
+
+    private void load(String cacheName) throws InterruptedException {
+        loads.get(cacheName).increment();
+        long latency = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (latency > 0) {
+            Thread.sleep(latency);
+        }
+    }
+
+    /**
+     * @param cacheName 缓存名称
+     * @return 方法执行次数，包括刷新
+     */
+    public long getLoadCount(String cacheName) {
+        return loads.get(cacheName).sum();
+    }
+
+    /**
+     * @param cache 访问记录中的缓存，item或list
+     * @return 缓存名称
+     */
+    public static String cacheOf(String cache) {
+        return switch (cache) {
+            case ITEM -> ITEM;
+            case LIST -> LIST;
+            default -> throw new IllegalArgumentException("未知的缓存：" + cache);
+        };
+    }
+
+    /**
+     * @param cache item或list
+     * @return 缓存名称
+     */
+    public static String cacheNameOf(String cache) {
+        return LIST.equals(cache) ? CACHE_LIST : CACHE_ITEM;
+    }
+}
@@ -0,0 +1,67 @@
+package com.smarthito.cache.benchmark.simulator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按顺序回放记录的访问，多个线程共享同一个位置
+ * 文件每行一次访问，格式为 key 或者 缓存 key，缓存为item(默认)或list，#开头的行忽略
+ *
+ * @author yaojunguang
+ */
+public class TraceWorkload implements Workload {
+
+    private final Path path;
+
+    private final List<Request> requests = new ArrayList<>();
+
+    private final boolean loop;
+
+    private final AtomicLong position = new AtomicLong();
+
+    /**
+     * @param path 文件
+     * @param loop 回放结束后是否从头开始
+     */
+    public TraceWorkload(Path path, boolean loop) {
+        this.path = path;
+        this.loop = loop;
+        try {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+", 2);
+                requests.add(fields.length == 1 ? new Request(SimulatedRepository.ITEM, fields[0])
+                        : new Request(SimulatedRepository.cacheOf(fields[0]), fields[1]));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取访问记录失败：" + path, e);
+        }
+        if (requests.isEmpty()) {
+            throw new IllegalArgumentException("访问记录为空：" + path);
+        }
+    }
+
+    @Override
+    public Request next(ThreadLocalRandom random) {
+        long index = position.getAndIncrement();
+        if (index >= requests.size() && !loop) {
+            return null;
+        }
+        return requests.get((int) (index % requests.size()));
+    }
+
+    @Override
+    public String toString() {
+        return "trace(" + path + ", " + requests.size() + (loop ? ", loop)" : ")");
+    }
+}
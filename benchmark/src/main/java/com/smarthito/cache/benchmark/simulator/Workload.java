@@ -0,0 +1,28 @@
+package com.smarthito.cache.benchmark.simulator;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 访问序列，多个线程同时调用
+ *
+ * @author yaojunguang
+ */
+public interface Workload {
+
+    /**
+     * 下一次访问
+     *
+     * @param random 当前线程的随机数
+     * @return 访问，回放结束时返回null
+     */
+    Request next(ThreadLocalRandom random);
+
+    /**
+     * 一次访问
+     *
+     * @param cache 缓存，SimulatedRepository.ITEM或LIST
+     * @param key   参数
+     */
+    record Request(String cache, String key) {
+    }
+}
@@ -0,0 +1,316 @@
+package com.smarthito.cache.benchmark.simulator;
+
+import com.smarthito.cache.benchmark.BenchmarkApplication;
+import com.smarthito.cache.benchmark.InMemoryRedis;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 负载模拟：多个节点(独立的spring应用)共享一个内存redis，多个线程按zipf分布或访问记录调用@Cacheable方法，
+ * 经过调用信息切面、缓存管理器、刷新和分布式锁的完整流程，用于调整过期时间、刷新时间和配置项前预估效果
+ * <p>
+ * java -cp target/benchmarks.jar com.smarthito.cache.benchmark.simulator.WorkloadSimulator \
+ * --simulation.nodes=3 --simulation.item.ttl=60 --simulation.item.preload=20 \
+ * "--spring.cache.redis.plus.caches[sim:item]=local=10000#xfetch"
+ * <p>
+ * simulation.开头的参数见 {@link #usage()}，其他参数作为spring配置传给每个节点
+ * 刷新时通过SpringContextUtils获取bean，多个节点在同一个进程中时刷新可能在另一个节点的bean上执行，汇总的结果不受影响
+ *
+ * @author yaojunguang
+ */
+public class WorkloadSimulator {
+
+    private static final String PREFIX = "simulation.";
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, Object> properties;
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    private final InMemoryRedis redis = new InMemoryRedis();
+
+    private final MeterRegistry clientRegistry = new SimpleMeterRegistry();
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private volatile boolean recording;
+
+    private volatile boolean stopped;
+
+    public WorkloadSimulator(Map<String, Object> properties) {
+        this.properties = properties;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (String arg : args) {
+            if ("-h".equals(arg) || "--help".equals(arg)) {
+                System.out.println(usage());
+                return;
+            }
+            String property = arg.startsWith("--") ? arg.substring(2) : arg;
+            int index = property.indexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("参数格式为 --名称=值：" + arg);
+            }
+            properties.put(property.substring(0, index), property.substring(index + 1));
+        }
+        new WorkloadSimulator(properties).run();
+    }
+
+    private static String usage() {
+        return String.join(System.lineSeparator(),
+                "--simulation.nodes=3              节点数",
+                "--simulation.threads=16           调用线程数，按顺序分配到各个节点",
+                "--simulation.duration=60          统计时长(秒)",
+                "--simulation.warmup=10            预热时长(秒)，不计入统计",
+                "--simulation.rate=0               每秒总调用次数，0不限制",
+                "--simulation.keys=100000          zipf分布的key数量",
+                "--simulation.zipf=0.99            zipf分布指数",
+                "--simulation.list-ratio=0.2       调用列表缓存(sim:list)的比例",
+                "--simulation.trace=               访问记录文件，指定时代替zipf分布",
+                "--simulation.trace-loop=true      访问记录回放结束后从头开始",
+                "--simulation.redis-latency-us=0   每个redis命令的模拟延迟(微秒)",
+                "--simulation.loader.latency-ms=20 方法执行时间(毫秒)",
+                "--simulation.loader.jitter-ms=10  方法执行时间的随机增加量(毫秒)",
+                "--simulation.item.ttl=300         sim:item的过期时间(秒)，preload为刷新时间",
+                "--simulation.list.ttl=60          sim:list的过期时间(秒)，preload为刷新时间",
+                "--spring.cache.redis.plus.caches[sim:item]=local#xfetch  缓存的配置项");
+    }
+
+    private String option(String name, Object defaultValue) {
+        return String.valueOf(properties.getOrDefault(PREFIX + name, defaultValue));
+    }
+
+    public void run() throws InterruptedException {
+        int nodeCount = Integer.parseInt(option("nodes", 3));
+        int threads = Integer.parseInt(option("threads", 16));
+        long duration = Long.parseLong(option("duration", 60));
+        long warmup = Long.parseLong(option("warmup", 10));
+        double rate = Double.parseDouble(option("rate", 0));
+        String trace = option("trace", "");
+        Workload workload = trace.isEmpty()
+                ? new ZipfWorkload(Integer.parseInt(option("keys", 100000)), Double.parseDouble(option("zipf", 0.99)),
+                Double.parseDouble(option("list-ratio", 0.2)))
+                : new TraceWorkload(Path.of(trace), Boolean.parseBoolean(option("trace-loop", true)));
+        redis.setCommandLatency(TimeUnit.MICROSECONDS.toNanos(Long.parseLong(option("redis-latency-us", 0))));
+
+        for (int i = 0; i < nodeCount; i++) {
+            MeterRegistry registry = new SimpleMeterRegistry();
+            ConfigurableApplicationContext context = BenchmarkApplication.builder(redis, true)
+                    .properties(properties)
+                    .initializers(c -> c.getBeanFactory().registerSingleton("meterRegistry", registry))
+                    .run();
+            nodes.add(new Node(context, registry, context.getBean(SimulatedRepository.class)));
+        }
+        System.out.printf("节点 %d，线程 %d，预热 %ds，统计 %ds，访问 %s%n", nodeCount, threads, warmup, duration, workload);
+
+        CountDownLatch finished = new CountDownLatch(threads);
+        long intervalNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * threads / rate) : 0;
+        for (int i = 0; i < threads; i++) {
+            SimulatedRepository repository = nodes.get(i % nodeCount).repository;
+            Thread thread = new Thread(() -> {
+                try {
+                    call(repository, workload, intervalNanos);
+                } finally {
+                    finished.countDown();
+                }
+            }, "simulator-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        finished.await(warmup, TimeUnit.SECONDS);
+        Snapshot start = snapshot();
+        recording = true;
+        long startNanos = System.nanoTime();
+        finished.await(duration, TimeUnit.SECONDS);
+        recording = false;
+        long elapsedNanos = System.nanoTime() - startNanos;
+        Snapshot end = snapshot();
+        stopped = true;
+        finished.await(10, TimeUnit.SECONDS);
+
+        report(start, end, elapsedNanos / 1e9);
+        nodes.forEach(node -> node.context.close());
+    }
+
+    /**
+     * 一个线程的调用循环，限制速率时按计划时间计算耗时，避免调用变慢时少算排队时间
+     */
+    private void call(SimulatedRepository repository, Workload workload, long intervalNanos) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long next = System.nanoTime();
+        while (!stopped) {
+            if (intervalNanos > 0) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            Workload.Request request = workload.next(random);
+            if (request == null) {
+                return;
+            }
+            long start = intervalNanos > 0 ? next : System.nanoTime();
+            String cacheName = SimulatedRepository.cacheNameOf(request.cache());
+            try {
+                if (SimulatedRepository.LIST.equals(request.cache())) {
+                    repository.list(request.key());
+                } else {
+                    repository.item(request.key());
+                }
+            } catch (Exception e) {
+                if (recording) {
+                    errors.computeIfAbsent(cacheName, key -> new LongAdder()).increment();
+                }
+            }
+            if (recording) {
+                timer(cacheName).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            next += intervalNanos;
+        }
+    }
+
+    private Timer timer(String cacheName) {
+        return timers.computeIfAbsent(cacheName, name -> Timer.builder("simulator.call").tag("cache", name)
+                .publishPercentiles(PERCENTILES)
+                .percentilePrecision(2)
+                .distributionStatisticExpiry(Duration.ofDays(1))
+                .distributionStatisticBufferLength(1)
+                .register(clientRegistry));
+    }
+
+    private Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        for (String cacheName : List.of(SimulatedRepository.CACHE_ITEM, SimulatedRepository.CACHE_LIST)) {
+            snapshot.put(cacheName + ".hit", sum("cache.redis.plus.gets", "cache", cacheName, "result", "hit"));
+            snapshot.put(cacheName + ".miss", sum("cache.redis.plus.gets", "cache", cacheName, "result", "miss"));
+            snapshot.put(cacheName + ".load", nodes.stream().mapToLong(node -> node.repository.getLoadCount(cacheName)).sum());
+            for (String outcome : List.of("triggered", "executed", "skipped", "failed")) {
+                snapshot.put(cacheName + ".refresh." + outcome, sum("cache.redis.plus.refreshes", "cache", cacheName, "result", outcome));
+            }
+        }
+        snapshot.put("refresh.submitted", sum("cache.redis.plus.refresh.submitted"));
+        snapshot.put("refresh.rejected", sum("cache.redis.plus.refresh.rejected"));
+        snapshot.put("lock.acquired", sum("cache.redis.plus.lock.acquisitions", "result", "acquired"));
+        snapshot.put("lock.failed", sum("cache.redis.plus.lock.acquisitions", "result", "failed"));
+        snapshot.put("lock.contended", sum("cache.redis.plus.lock.contended"));
+        snapshot.put("lock.wait", sum("cache.redis.plus.lock.wait"));
+        snapshot.put("lock.renewed", sum("cache.redis.plus.lock.renewals", "result", "renewed"));
+        snapshot.put("lock.lost", sum("cache.redis.plus.lock.renewals", "result", "lost"));
+        redis.getCommandCounts().forEach((command, count) -> snapshot.put("redis." + command, count));
+        return snapshot;
+    }
+
+    /**
+     * 所有节点上同名计数的和
+     */
+    private double sum(String name, String... tags) {
+        double total = 0;
+        for (Node node : nodes) {
+            total += node.registry.find(name).tags(tags).counters().stream().mapToDouble(c -> c.count()).sum();
+            total += node.registry.find(name).tags(tags).functionCounters().stream().mapToDouble(c -> c.count()).sum();
+        }
+        return total;
+    }
+
+    private void report(Snapshot start, Snapshot end, double seconds) {
+        Snapshot delta = end.minus(start);
+        StringBuilder out = new StringBuilder(System.lineSeparator());
+        out.append(String.format("%-10s %10s %10s %8s %10s %9s %9s %9s %9s %9s %7s%n", "缓存", "调用", "次/秒", "命中率",
+                "方法执行", "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)", "max(ms)", "错误"));
+        long totalCalls = 0;
+        for (String cacheName : List.of(SimulatedRepository.CACHE_ITEM, SimulatedRepository.CACHE_LIST)) {
+            Timer timer = timers.get(cacheName);
+            if (timer == null) {
+                continue;
+            }
+            var snapshot = timer.takeSnapshot();
+            double[] percentiles = new double[PERCENTILES.length];
+            for (var value : snapshot.percentileValues()) {
+                for (int i = 0; i < PERCENTILES.length; i++) {
+                    if (value.percentile() == PERCENTILES[i]) {
+                        percentiles[i] = value.value(TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+            double hits = delta.get(cacheName + ".hit");
+            double gets = hits + delta.get(cacheName + ".miss");
+            totalCalls += snapshot.count();
+            out.append(String.format("%-10s %10d %10.0f %7.2f%% %10.0f %9.2f %9.2f %9.2f %9.2f %9.2f %7d%n", cacheName,
+                    snapshot.count(), snapshot.count() / seconds, gets > 0 ? hits * 100 / gets : 0,
+                    delta.get(cacheName + ".load"), percentiles[0], percentiles[1], percentiles[2], percentiles[3],
+                    snapshot.max(TimeUnit.MILLISECONDS), errors.getOrDefault(cacheName, new LongAdder()).sum()));
+        }
+        out.append(String.format("合计 %d 次调用，%.0f 次/秒，统计 %.1f 秒%n%n", totalCalls, totalCalls / seconds, seconds));
+
+        out.append(String.format("%-10s %10s %10s %10s %10s%n", "刷新", "触发", "执行", "跳过", "失败"));
+        for (String cacheName : List.of(SimulatedRepository.CACHE_ITEM, SimulatedRepository.CACHE_LIST)) {
+            out.append(String.format("%-10s %10.0f %10.0f %10.0f %10.0f%n", cacheName, delta.get(cacheName + ".refresh.triggered"),
+                    delta.get(cacheName + ".refresh.executed"), delta.get(cacheName + ".refresh.skipped"),
+                    delta.get(cacheName + ".refresh.failed")));
+        }
+        out.append(String.format("刷新执行器：提交 %.0f，丢弃 %.0f%n%n", delta.get("refresh.submitted"), delta.get("refresh.rejected")));
+
+        out.append(String.format("分布式锁：获取 %.0f，失败 %.0f，竞争 %.0f，等待合计 %.0fms，续期 %.0f，丢失 %.0f%n%n",
+                delta.get("lock.acquired"), delta.get("lock.failed"), delta.get("lock.contended"), delta.get("lock.wait"),
+                delta.get("lock.renewed"), delta.get("lock.lost")));
+
+        double commands = 0;
+        StringBuilder detail = new StringBuilder();
+        for (Map.Entry<String, Double> entry : delta.values.entrySet()) {
+            if (entry.getKey().startsWith("redis.") && entry.getValue() > 0) {
+                commands += entry.getValue();
+                detail.append(String.format("  %-24s %12.0f %10.0f/s%n", entry.getKey().substring("redis.".length()),
+                        entry.getValue(), entry.getValue() / seconds));
+            }
+        }
+        out.append(String.format("redis：命令 %.0f，%.0f 次/秒，key %d%n", commands, commands / seconds, redis.size()));
+        out.append(detail);
+        System.out.print(out);
+    }
+
+    private record Node(ConfigurableApplicationContext context, MeterRegistry registry, SimulatedRepository repository) {
+    }
+
+    /**
+     * 某一时刻的累计计数
+     */
+    private static final class Snapshot {
+
+        private final Map<String, Double> values = new LinkedHashMap<>();
+
+        void put(String name, double value) {
+            values.put(name, value);
+        }
+
+        double get(String name) {
+            return values.getOrDefault(name, 0d);
+        }
+
+        Snapshot minus(Snapshot start) {
+            Snapshot delta = new Snapshot();
+            values.forEach((name, value) -> delta.put(name, value - start.get(name)));
+            return delta;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.smarthito.cache.benchmark.simulator;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按zipf分布生成访问，排名为k的key的访问概率与 1/k^s 成正比
+ * 预先计算累积分布，每次访问二分查找，key数量为百万级时占用几MB内存
+ *
+ * @author yaojunguang
+ */
+public class ZipfWorkload implements Workload {
+
+    private final double[] cdf;
+
+    private final double exponent;
+
+    private final double listRatio;
+
+    /**
+     * @param keys      key的数量
+     * @param exponent  分布指数s，越大越集中在少数热点key
+     * @param listRatio 访问列表缓存的比例
+     */
+    public ZipfWorkload(int keys, double exponent, double listRatio) {
+        if (keys <= 0) {
+            throw new IllegalArgumentException("key的数量必须大于0：" + keys);
+        }
+        this.exponent = exponent;
+        this.listRatio = listRatio;
+        cdf = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < keys; i++) {
+            cdf[i] /= sum;
+        }
+    }
+
+    @Override
+    public Request next(ThreadLocalRandom random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        int rank = index >= 0 ? index : Math.min(-index - 1, cdf.length - 1);
+        String cache = random.nextDouble() < listRatio ? SimulatedRepository.LIST : SimulatedRepository.ITEM;
+        return new Request(cache, Integer.toString(rank));
+    }
+
+    @Override
+    public String toString() {
+        return "zipf(s=" + exponent + ", keys=" + cdf.length + ", list=" + listRatio + ")";
+    }
+}
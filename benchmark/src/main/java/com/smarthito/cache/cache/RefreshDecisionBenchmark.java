@@ -0,0 +1,65 @@
+package com.smarthito.cache.cache;
+
+import com.smarthito.cache.benchmark.BenchmarkApplication;
+import com.smarthito.cache.benchmark.InMemoryRedis;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次命中都会执行的刷新判断：固定刷新窗口和概率提前刷新(XFetch)
+ * shouldRefresh不是public的，基准放在缓存的包中直接调用，不包含读取redis的开销
+ *
+ * @author yaojunguang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RefreshDecisionBenchmark {
+
+    @Param({"bench:decision#3600#600", "bench:decision#3600#600#xfetch=1.5"})
+    private String spec;
+
+    /**
+     * 剩余时间(毫秒)：刷新窗口外、窗口内
+     */
+    @Param({"1800000", "300000"})
+    private long ttl;
+
+    private ConfigurableApplicationContext context;
+
+    private CustomizedRedisCache cache;
+
+    @Setup
+    public void start() {
+        context = BenchmarkApplication.start(new InMemoryRedis(), true);
+        cache = (CustomizedRedisCache) context.getBean(CustomizedRedisCacheManager.class).getCache(spec);
+        // 已经观测到加载耗时，XFetch按加载耗时计算
+        cache.recordLoadTime(TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    @TearDown
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean shouldRefresh() {
+        return cache.shouldRefresh(ttl);
+    }
+}
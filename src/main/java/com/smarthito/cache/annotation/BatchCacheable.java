@@ -0,0 +1,43 @@
+package com.smarthito.cache.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 批量缓存，用于参数是集合、按元素返回结果的方法，例如 List&lt;User&gt; findByIds(Collection&lt;Long&gt; ids)
+ * 每个元素单独缓存，一次批量读取，只用未命中的元素调用方法，结果按参数顺序合并，未命中的结果一次批量写入
+ * <p>
+ * 方法返回Map时，key为参数元素；返回List/Set时，需要通过resultKey从结果中取出对应的参数元素
+ *
+ * @author yaojunguang
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface BatchCacheable {
+
+    /**
+     * 缓存名称，格式与@Cacheable相同：名称#有效时间#自动刷新时间#配置项
+     */
+    String value();
+
+    /**
+     * 集合参数的位置
+     */
+    int index() default 0;
+
+    /**
+     * 每个元素的缓存key(SpEL)，#element为参数元素，可以使用方法参数；默认为元素本身
+     */
+    String key() default "";
+
+    /**
+     * 返回List/Set时，从结果元素中取出对应的参数元素(SpEL)，#result为结果元素，例如 #result.id
+     */
+    String resultKey() default "";
+}
@@ -0,0 +1,84 @@
+package com.smarthito.cache.cache;
+
+import com.smarthito.cache.script.LuaScript;
+import com.smarthito.cache.script.LuaScripts;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.ReactiveScriptingCommands;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.util.ByteUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 非阻塞地同时读取缓存值和剩余有效时间
+ * 只在连接工厂支持响应式连接(lettuce)时使用，与同步读取一样执行GET_WITH_TTL脚本，值和剩余时间在服务端原子地取得
+ *
+ * @author yaojunguang
+ */
+final class AsyncCacheReader {
+
+    private final ReactiveRedisConnectionFactory connectionFactory;
+
+    private AsyncCacheReader(ReactiveRedisConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * @param connectionFactory 连接工厂
+     * @return 不支持响应式连接时返回null
+     */
+    static AsyncCacheReader create(RedisConnectionFactory connectionFactory) {
+        return connectionFactory instanceof ReactiveRedisConnectionFactory
+                ? new AsyncCacheReader((ReactiveRedisConnectionFactory) connectionFactory) : null;
+    }
+
+    /**
+     * 读取缓存值和剩余时间
+     *
+     * @param cacheKey 序列化后的缓存key
+     * @return 缓存值和剩余时间(毫秒)，与GET_WITH_TTL脚本的返回格式相同；未命中时为null
+     */
+    CompletableFuture<List<Object>> getWithTtl(byte[] cacheKey) {
+        return Mono.usingWhen(Mono.fromSupplier(connectionFactory::getReactiveConnection),
+                connection -> evalGetWithTtl(connection.scriptingCommands(), cacheKey).collectList(),
+                ReactiveRedisConnection::closeLater).mapNotNull(AsyncCacheReader::toResult).toFuture();
+    }
+
+    /**
+     * 通过EVALSHA执行，服务端没有缓存脚本时改用EVAL
+     */
+    private static Flux<Object> evalGetWithTtl(ReactiveScriptingCommands commands, byte[] cacheKey) {
+        LuaScript script = LuaScripts.GET_WITH_TTL;
+        return commands.<Object>evalSha(script.getSha1(), ReturnType.MULTI, 1, ByteBuffer.wrap(cacheKey))
+                .onErrorResume(LuaScript::isNoScript,
+                        e -> commands.eval(script.getSource(), ReturnType.MULTI, 1, ByteBuffer.wrap(cacheKey)));
+    }
+
+    /**
+     * 响应式执行时结果中的nil被跳过，按类型区分缓存值和剩余时间
+     *
+     * @param values 脚本返回的元素
+     * @return 缓存值和剩余时间，未命中时为null
+     */
+    private static List<Object> toResult(List<Object> values) {
+        byte[] value = null;
+        long ttl = -1;
+        for (Object element : values) {
+            if (element instanceof ByteBuffer) {
+                value = ByteUtils.getBytes((ByteBuffer) element);
+            } else if (element instanceof byte[]) {
+                value = (byte[]) element;
+            } else if (element instanceof Long) {
+                ttl = (Long) element;
+            }
+        }
+        return value == null ? null : Arrays.asList(value, ttl);
+    }
+}
@@ -0,0 +1,272 @@
+package com.smarthito.cache.cache;
+
+import com.smarthito.cache.annotation.BatchCacheable;
+import com.smarthito.cache.cache.expression.CacheOperationExpressionEvaluator;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.expression.AnnotatedElementKey;
+import org.springframework.core.Ordered;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.expression.EvaluationContext;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 处理@BatchCacheable
+ * 按元素拆分缓存key，一次批量读取，只用未命中的元素调用方法，结果按参数顺序合并后返回；
+ * 未命中的结果一次批量写入，进入刷新窗口的元素在后台用同一个方法批量刷新；
+ * 后台刷新通过代理调用方法，其他切面(如@Transactional)照常生效，只有本切面直接放行
+ *
+ * @author yaojunguang
+ */
+@Slf4j
+@Aspect
+public class BatchCachingAspect implements Ordered {
+
+    private static final String ELEMENT_VARIABLE = "element";
+
+    private final CacheOperationExpressionEvaluator evaluator = new CacheOperationExpressionEvaluator();
+
+    private final ConversionService conversionService = DefaultConversionService.getSharedInstance();
+
+    /**
+     * 后台刷新通过代理调用的方法，进入本切面时直接执行，不再读取缓存
+     */
+    private static final ThreadLocal<Method> REFRESHING = new ThreadLocal<>();
+
+    @Resource
+    private CacheManager cacheManager;
+    @Resource
+    private BeanFactory beanFactory;
+
+    @Around("@annotation(batchCacheable)")
+    public Object batchCache(ProceedingJoinPoint joinPoint, BatchCacheable batchCacheable) throws Throwable {
+        Method refreshing = REFRESHING.get();
+        if (refreshing != null) {
+            // 只放行刷新发起的这一次调用，方法内部的其他调用照常走缓存
+            REFRESHING.remove();
+            if (refreshing.equals(((MethodSignature) joinPoint.getSignature()).getMethod())) {
+                return joinPoint.proceed();
+            }
+        }
+        Object[] args = joinPoint.getArgs();
+        int index = batchCacheable.index();
+        if (index >= args.length || !(args[index] instanceof Collection) || ((Collection<?>) args[index]).isEmpty()) {
+            return joinPoint.proceed();
+        }
+        Cache cache = cacheManager.getCache(batchCacheable.value());
+        if (!(cache instanceof CustomizedRedisCache)) {
+            return joinPoint.proceed();
+        }
+        CustomizedRedisCache redisCache = (CustomizedRedisCache) cache;
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Class<?> targetClass = AopProxyUtils.ultimateTargetClass(joinPoint.getTarget());
+        AnnotatedElementKey methodKey = new AnnotatedElementKey(method, targetClass);
+
+        // 缓存key -> 参数元素
+        Map<Object, Object> keyElements = new LinkedHashMap<>();
+        EvaluationContext context = evaluator.createEvaluationContext(List.of(cache), method, args, joinPoint.getTarget(), targetClass, beanFactory);
+        for (Object element : (Collection<?>) args[index]) {
+            if (StringUtils.isBlank(batchCacheable.key())) {
+                keyElements.put(element, element);
+            } else {
+                context.setVariable(ELEMENT_VARIABLE, element);
+                keyElements.put(evaluator.key(batchCacheable.key(), methodKey, context), element);
+            }
+        }
+
+        // 通过代理刷新，此时切面已经返回，不能再使用joinPoint.proceed
+        Object proxy = joinPoint.getThis();
+        Map<Object, Cache.ValueWrapper> hits = redisCache.getAll(keyElements.keySet(), keys -> {
+            try {
+                load(joinPoint, batchCacheable, redisCache, keys, keyElements, refreshArgs -> invokeProxy(proxy, method, refreshArgs));
+            } catch (Throwable e) {
+                log.info("批量刷新缓存失败：" + e.getMessage(), e);
+            }
+        });
+        // 参数元素 -> 结果
+        Map<Object, Object> values = new HashMap<>(keyElements.size() * 4 / 3 + 1);
+        List<Object> missKeys = new ArrayList<>();
+        keyElements.forEach((key, element) -> {
+            Cache.ValueWrapper valueWrapper = hits.get(key);
+            if (valueWrapper == null) {
+                missKeys.add(key);
+            } else if (valueWrapper.get() != null) {
+                values.put(element, valueWrapper.get());
+            }
+        });
+        if (!missKeys.isEmpty()) {
+            values.putAll(load(joinPoint, batchCacheable, redisCache, missKeys, keyElements, joinPoint::proceed));
+        }
+        return merge(method.getReturnType(), keyElements.values(), values);
+    }
+
+    /**
+     * 用未命中的元素调用方法，结果批量写入缓存
+     * 允许缓存null时，没有结果的元素也写入，避免每次都调用方法
+     *
+     * @param keys        未命中的缓存key
+     * @param keyElements 缓存key -> 参数元素
+     * @param invoker     方法调用
+     * @return 参数元素 -> 结果
+     */
+    private Map<Object, Object> load(ProceedingJoinPoint joinPoint, BatchCacheable batchCacheable, CustomizedRedisCache redisCache,
+                                     List<Object> keys, Map<Object, Object> keyElements, MethodInvoker invoker) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        int index = batchCacheable.index();
+        Collection<Object> elements = Set.class.isAssignableFrom(method.getParameterTypes()[index])
+                ? new LinkedHashSet<>(keys.size()) : new ArrayList<>(keys.size());
+        keys.forEach(key -> elements.add(keyElements.get(key)));
+        Object[] args = joinPoint.getArgs().clone();
+        args[index] = elements;
+
+        Map<Object, Object> loaded = alignKeys(toElementMap(joinPoint, batchCacheable, method, args, invoker.invoke(args)), elements, method);
+        boolean allowNullValues = redisCache.getCacheConfiguration().getAllowCacheNullValues();
+        Map<Object, Object> writes = new LinkedHashMap<>(keys.size() * 4 / 3 + 1);
+        for (Object key : keys) {
+            Object value = loaded.get(keyElements.get(key));
+            if (value != null || allowNullValues) {
+                writes.put(key, value);
+            }
+        }
+        redisCache.putAll(writes);
+        return loaded;
+    }
+
+    /**
+     * 后台刷新时通过代理调用方法
+     *
+     * @param proxy  代理对象
+     * @param method 方法
+     * @param args   参数
+     * @return 方法结果
+     */
+    private Object invokeProxy(Object proxy, Method method, Object[] args) throws Throwable {
+        REFRESHING.set(method);
+        try {
+            return method.invoke(proxy, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        } finally {
+            REFRESHING.remove();
+        }
+    }
+
+    /**
+     * 结果的key与参数元素类型不同时(如Long与Integer)按参数元素的类型转换，
+     * 转换后仍然没有任何一个元素有结果时抛出异常，避免所有元素都被当作未命中、写入null
+     *
+     * @param loaded   参数元素 -> 结果
+     * @param elements 参数元素
+     * @param method   方法
+     * @return 参数元素 -> 结果
+     */
+    private Map<Object, Object> alignKeys(Map<Object, Object> loaded, Collection<Object> elements, Method method) {
+        if (loaded.isEmpty() || elements.stream().anyMatch(loaded::containsKey)) {
+            return loaded;
+        }
+        Class<?> elementType = elements.stream().filter(Objects::nonNull).findFirst().map(Object::getClass).orElse(null);
+        Map<Object, Object> converted = new HashMap<>(loaded.size() * 4 / 3 + 1);
+        if (elementType != null) {
+            loaded.forEach((key, value) -> {
+                if (key != null && conversionService.canConvert(key.getClass(), elementType)) {
+                    converted.put(conversionService.convert(key, elementType), value);
+                }
+            });
+        }
+        if (elements.stream().noneMatch(converted::containsKey)) {
+            Object sampleKey = loaded.keySet().iterator().next();
+            throw new IllegalStateException(String.format("@BatchCacheable方法结果的key与参数元素不匹配：%s，结果key类型%s，参数元素类型%s", method,
+                    sampleKey == null ? null : sampleKey.getClass().getName(), elementType == null ? null : elementType.getName()));
+        }
+        return converted;
+    }
+
+    /**
+     * 方法调用
+     */
+    @FunctionalInterface
+    private interface MethodInvoker {
+        Object invoke(Object[] args) throws Throwable;
+    }
+
+    /**
+     * 方法结果转换为 参数元素 -> 结果
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Object, Object> toElementMap(ProceedingJoinPoint joinPoint, BatchCacheable batchCacheable, Method method, Object[] args, Object result) {
+        if (result == null) {
+            return new HashMap<>(0);
+        }
+        if (result instanceof Map) {
+            return (Map<Object, Object>) result;
+        }
+        if (!(result instanceof Collection)) {
+            throw new IllegalStateException("@BatchCacheable方法只能返回Map、List或Set：" + method);
+        }
+        if (StringUtils.isBlank(batchCacheable.resultKey())) {
+            throw new IllegalStateException("@BatchCacheable方法返回集合时必须配置resultKey：" + method);
+        }
+        Class<?> targetClass = AopProxyUtils.ultimateTargetClass(joinPoint.getTarget());
+        AnnotatedElementKey methodKey = new AnnotatedElementKey(method, targetClass);
+        EvaluationContext context = evaluator.createEvaluationContext(List.of(), method, args, joinPoint.getTarget(), targetClass, beanFactory);
+        Collection<?> items = (Collection<?>) result;
+        Map<Object, Object> elementMap = new HashMap<>(items.size() * 4 / 3 + 1);
+        for (Object item : items) {
+            if (item != null) {
+                context.setVariable(CacheOperationExpressionEvaluator.RESULT_VARIABLE, item);
+                elementMap.put(evaluator.key(batchCacheable.resultKey(), methodKey, context), item);
+            }
+        }
+        return elementMap;
+    }
+
+    /**
+     * 按参数顺序合并结果，没有结果的元素不出现在返回值中
+     */
+    private Object merge(Class<?> returnType, Collection<Object> elements, Map<Object, Object> values) {
+        if (Map.class.isAssignableFrom(returnType)) {
+            Map<Object, Object> result = new LinkedHashMap<>(elements.size() * 4 / 3 + 1);
+            for (Object element : elements) {
+                Object value = values.get(element);
+                if (value != null) {
+                    result.put(element, value);
+                }
+            }
+            return result;
+        }
+        List<Object> result = new ArrayList<>(elements.size());
+        for (Object element : elements) {
+            Object value = values.get(element);
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return Set.class.isAssignableFrom(returnType) ? new LinkedHashSet<>(result) : result;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,153 @@
+package com.smarthito.cache.cache;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 当前线程正在执行的@Cacheable方法信息
+ * 切面在方法调用前放入，缓存未命中、方法实际执行后写入缓存时取出并注册方法信息，
+ * 命中缓存时不会发生写入，也就不会注册
+ *
+ * @author yaojunguang
+ */
+public class CacheInvocationContext {
+
+    private static final ThreadLocal<CacheInvocationContext> CURRENT = new ThreadLocal<>();
+
+    private static final String SEPARATOR = "#";
+
+    private final Object targetBean;
+    private final Method targetMethod;
+    private final Class[] parameterTypes;
+    private final Object[] arguments;
+
+    /**
+     * 注解上的缓存名称(包含#之后的配置)
+     */
+    private final Set<String> cacheNames;
+
+    /**
+     * 方法开始执行的时间，纳秒，用于统计加载耗时
+     */
+    private final long startNanos;
+
+    /**
+     * 本次调用持有的单飞加载锁的释放方法，key为redis中的缓存key
+     */
+    private Map<String, Runnable> loadLocks;
+
+    public CacheInvocationContext(Object targetBean, Method targetMethod, Class[] parameterTypes, Object[] arguments, Set<String> cacheNames) {
+        this.targetBean = targetBean;
+        this.targetMethod = targetMethod;
+        this.parameterTypes = parameterTypes;
+        this.arguments = arguments;
+        this.cacheNames = cacheNames;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * 设置当前线程的方法信息
+     *
+     * @param context 方法信息
+     * @return 之前的方法信息，方法调用结束后需要通过restore恢复
+     */
+    public static CacheInvocationContext push(CacheInvocationContext context) {
+        CacheInvocationContext previous = CURRENT.get();
+        CURRENT.set(context);
+        return previous;
+    }
+
+    /**
+     * 恢复外层方法的信息
+     *
+     * @param previous push返回的方法信息
+     */
+    public static void restore(CacheInvocationContext previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    public static CacheInvocationContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 方法注解上是否包含指定的缓存
+     *
+     * @param cacheName 真实的缓存名称
+     * @return 是否包含
+     */
+    public boolean hasCache(String cacheName) {
+        for (String name : cacheNames) {
+            if (name.equals(cacheName) || (name.startsWith(cacheName) && name.startsWith(SEPARATOR, cacheName.length()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 记录持有的加载锁，写入缓存或方法调用结束时释放
+     *
+     * @param cacheKey redis中的缓存key
+     * @param release  释放方法
+     */
+    public void holdLoadLock(String cacheKey, Runnable release) {
+        if (loadLocks == null) {
+            loadLocks = new HashMap<>(2);
+        }
+        loadLocks.put(cacheKey, release);
+    }
+
+    public boolean isHoldingLoadLock(String cacheKey) {
+        return loadLocks != null && loadLocks.containsKey(cacheKey);
+    }
+
+    /**
+     * 释放指定缓存key的加载锁
+     *
+     * @param cacheKey redis中的缓存key
+     */
+    public void releaseLoadLock(String cacheKey) {
+        Runnable release = loadLocks == null ? null : loadLocks.remove(cacheKey);
+        if (release != null) {
+            release.run();
+        }
+    }
+
+    /**
+     * 释放所有未释放的加载锁，方法异常或结果未写入缓存时由切面调用
+     */
+    public void releaseLoadLocks() {
+        if (loadLocks == null) {
+            return;
+        }
+        loadLocks.values().forEach(Runnable::run);
+        loadLocks = null;
+    }
+
+    public Object getTargetBean() {
+        return targetBean;
+    }
+
+    public Method getTargetMethod() {
+        return targetMethod;
+    }
+
+    public Class[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public Object[] getArguments() {
+        return arguments;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+}
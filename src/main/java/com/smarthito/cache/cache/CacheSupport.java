@@ -1,7 +1,6 @@
 package com.smarthito.cache.cache;
 
 import java.lang.reflect.Method;
-import java.util.Set;
 
 /**
  * 注册和刷新缓存接口
@@ -11,16 +10,16 @@ import java.util.Set;
 public interface CacheSupport {
 
     /**
-     * 注册缓存方法信息
+     * 注册缓存方法信息，只在缓存未命中、方法实际执行后写入缓存时调用
      *
      * @param invokedBean          代理Bean
      * @param invokedMethod        代理方法名称
      * @param invocationParamTypes 代理方法参数类型
      * @param invocationArgs       代理方法参数
-     * @param cacheNames           缓存名称（@Cacheable注解的value）
-     * @param cacheKey             缓存key（@Cacheable注解的key）
+     * @param cache                写入的缓存
+     * @param key                  缓存key（spring生成的key）
      */
-    void registerInvocation(Object invokedBean, Method invokedMethod, Class[] invocationParamTypes, Object[] invocationArgs, Set<String> cacheNames, String cacheKey);
+    void registerInvocation(Object invokedBean, Method invokedMethod, Class[] invocationParamTypes, Object[] invocationArgs, CustomizedRedisCache cache, Object key);
 
     /**
      * 按容器以及指定键更新缓存
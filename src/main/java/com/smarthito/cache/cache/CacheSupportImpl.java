@@ -1,23 +1,21 @@
 package com.smarthito.cache.cache;
 
-import com.smarthito.cache.cache.expression.CacheOperationExpressionEvaluator;
 import com.smarthito.cache.utils.ReflectionUtils;
 import com.smarthito.cache.utils.SpringContextUtils;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.aop.framework.AopProxyUtils;
-import org.springframework.cache.Cache;
-import org.springframework.cache.interceptor.KeyGenerator;
-import org.springframework.context.expression.AnnotatedElementKey;
 import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.expression.EvaluationContext;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.MethodInvoker;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -29,53 +27,81 @@ import java.util.concurrent.TimeUnit;
 @Component("cacheSupport")
 public class CacheSupportImpl implements CacheSupport {
 
-    private final CacheOperationExpressionEvaluator evaluator = new CacheOperationExpressionEvaluator();
-
-    private static final String SEPARATOR = "#";
-
     private static final String INVOCATION_CACHE_KEY_SUFFIX = ":invocation_cache_key_suffix";
 
-    @Resource
-    private KeyGenerator keyGenerator;
     @Resource
     private RedisCacheManager cacheManager;
     @Resource
     private RedisTemplate<String, Object> redisTemplate;
+    @Resource
+    private CachedMethodRegistry cachedMethodRegistry;
 
     @Override
     public void registerInvocation(Object targetBean,
                                    Method targetMethod,
                                    Class[] invocationParamTypes,
                                    Object[] invocationArgs,
-                                   Set<String> annotatedCacheNames,
-                                   String cacheKey) {
-
-        // 获取注解上真实的value值
-        Collection<? extends Cache> caches = getCache(annotatedCacheNames);
-
-        // 获取key的SpEL值
-        Object key = generateKey(caches, cacheKey, targetMethod, invocationArgs, targetBean, CacheOperationExpressionEvaluator.NO_RESULT);
-        // 新建一个代理对象（记录了缓存注解的方法类信息）
-        final CachedMethodInvocation invocation = new CachedMethodInvocation(key, targetBean, targetMethod, invocationParamTypes, invocationArgs);
-        for (Cache cache : caches) {
-            if (cache instanceof CustomizedRedisCache) {
-                CustomizedRedisCache redisCache = ((CustomizedRedisCache) cache);
-                // 将方法信息放到redis缓存
-                redisTemplate.opsForValue().set(getInvocationCacheKey(redisCache.getCacheKey(key)),
-                        invocation, redisCache.getExpirationSecondTime(), TimeUnit.SECONDS);
-            }
-        }
+                                   CustomizedRedisCache cache,
+                                   Object key) {
+        // 方法信息只保存方法id和二进制编码的参数，方法id冲突时使用旧格式
+        CachedMethodDescriptor descriptor = cachedMethodRegistry.register(targetBean, targetMethod);
+        byte[] invocation = descriptor != null ? cachedMethodRegistry.encode(descriptor, invocationArgs)
+                : serializeValue(new CachedMethodInvocation(key, targetBean, targetMethod, invocationParamTypes, invocationArgs));
+        byte[] invocationKey = serializeKey(getInvocationCacheKey(cache.getCacheKey(key)));
+        long expireTime = cache.getExpirationSecondTime();
+        // 将方法信息放到redis缓存
+        redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands().set(invocationKey, invocation,
+                expireTime > 0 ? Expiration.seconds(expireTime) : Expiration.persistent(), RedisStringCommands.SetOption.upsert()));
     }
 
     @Override
     public void refreshCacheByKey(String cacheName, String cacheKey) {
         //在redis拿到方法信息，然后刷新缓存
-        CachedMethodInvocation invocation = (CachedMethodInvocation) redisTemplate.opsForValue().get(getInvocationCacheKey(cacheKey));
-        if (invocation != null) {
-            // 执行刷新方法
-            refreshCache(invocation, cacheName);
+        byte[] invocationKey = serializeKey(getInvocationCacheKey(cacheKey));
+        byte[] invocation = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(invocationKey));
+        if (invocation == null) {
+            return;
+        }
+        // 执行刷新方法
+        if (cachedMethodRegistry.isCompact(invocation)) {
+            refreshCache(invocation, cacheName, cacheKey);
+        } else {
+            // 升级前保存的、方法id冲突时保存的json格式
+            Object legacy = redisTemplate.getValueSerializer().deserialize(invocation);
+            if (legacy instanceof CachedMethodInvocation) {
+                refreshCache((CachedMethodInvocation) legacy, cacheName);
+            }
         }
+    }
+
+    private void refreshCache(byte[] invocation, String cacheName, String cacheKey) {
+        try {
+            CachedMethodDescriptor descriptor = cachedMethodRegistry.getDescriptor(invocation);
+            if (descriptor == null) {
+                log.info("缓存：{}，本节点未注册对应的方法，跳过刷新", cacheKey);
+                return;
+            }
+            // 通过先获取Spring的代理对象，在根据这个对象获取真实的实例对象
+            Object bean = descriptor.getBeanName() != null ? SpringContextUtils.getBean(descriptor.getBeanName())
+                    : SpringContextUtils.getBean(descriptor.getBeanType());
+            Object target = ReflectionUtils.getTarget(bean);
+            Object[] arguments = cachedMethodRegistry.readArguments(descriptor, invocation);
+            long startNanos = System.nanoTime();
+            Object computed = descriptor.getMethod().invoke(target, arguments);
+
+            CustomizedRedisCache redisCache = (CustomizedRedisCache) cacheManager.getCache(cacheName);
+            assert redisCache != null;
+            redisCache.recordLoadTime(System.nanoTime() - startNanos);
+            redisCache.putCacheKey(cacheKey, computed);
+            // 刷新redis中缓存法信息key的有效时间
+            redisTemplate.expire(getInvocationCacheKey(cacheKey), redisCache.getExpirationSecondTime(), TimeUnit.SECONDS);
 
+            log.info("缓存：{}，重新加载数据", cacheKey);
+        } catch (InvocationTargetException e) {
+            log.info("刷新缓存失败：" + e.getTargetException().getMessage(), e.getTargetException());
+        } catch (Exception e) {
+            log.info("刷新缓存失败：" + e.getMessage(), e);
+        }
     }
 
     private void refreshCache(CachedMethodInvocation invocation, String cacheName) {
@@ -84,16 +110,18 @@ public class CacheSupportImpl implements CacheSupport {
             Object computed = invoke(invocation);
 
             // 通过cacheManager获取操作缓存的cache对象
-            Cache cache = cacheManager.getCache(cacheName);
-            // 通过Cache对象更新缓存
-            assert cache != null;
-            cache.put(invocation.getKey(), computed);
-            CustomizedRedisCache redisCache = (CustomizedRedisCache) cache;
+            CustomizedRedisCache redisCache = (CustomizedRedisCache) cacheManager.getCache(cacheName);
+            assert redisCache != null;
+            // 与紧凑格式相同按缓存key写入，定时刷新的缓存同时登记下一次的刷新时间
+            String cacheKey = redisCache.getCacheKey(invocation.getKey());
+            redisCache.putCacheKey(cacheKey, computed);
             long expireTime = redisCache.getExpirationSecondTime();
             // 刷新redis中缓存法信息key的有效时间
-            redisTemplate.expire(getInvocationCacheKey(redisCache.getCacheKey(invocation.getKey())), expireTime, TimeUnit.SECONDS);
+            redisTemplate.expire(getInvocationCacheKey(cacheKey), expireTime, TimeUnit.SECONDS);
 
             log.info("缓存：{}:{}，重新加载数据", cacheName, invocation.getKey().toString());
+        } catch (InvocationTargetException e) {
+            log.info("刷新缓存失败：" + e.getTargetException().getMessage(), e.getTargetException());
         } catch (Exception e) {
             log.info("刷新缓存失败：" + e.getMessage(), e);
         }
@@ -118,73 +146,17 @@ public class CacheSupportImpl implements CacheSupport {
         return invoker.invoke();
     }
 
-    /**
-     * 解析SpEL表达式，获取注解上的key属性值 直接扣的Spring解析表达式部分代码
-     *
-     * @param caches f
-     * @param key    a
-     * @param method a
-     * @param args   a
-     * @param target a
-     * @param result a
-     * @return a
-     */
-    protected Object generateKey(Collection<? extends Cache> caches, String key, Method method, Object[] args,
-                                 Object target, Object result) {
-
-        // 获取注解上的key属性值
-        Class<?> targetClass = getTargetClass(target);
-        if (org.springframework.util.StringUtils.hasText(key)) {
-            EvaluationContext evaluationContext = evaluator.createEvaluationContext(caches, method, args, target,
-                    targetClass, result, null);
-
-            AnnotatedElementKey methodCacheKey = new AnnotatedElementKey(method, targetClass);
-            return evaluator.key(key, methodCacheKey, evaluationContext);
-        }
-        return this.keyGenerator.generate(target, method, args);
-    }
-
-    private Class<?> getTargetClass(Object target) {
-        Class<?> targetClass = AopProxyUtils.ultimateTargetClass(target);
-        if (targetClass == null && target != null) {
-            targetClass = target.getClass();
-        }
-        return targetClass;
-    }
-
-
-    public Collection<? extends Cache> getCache(Set<String> annotatedCacheNames) {
-        //通过cache名称获取cache列表
-        Collection<String> cacheNames = generateValue(annotatedCacheNames);
-
-        if (cacheNames == null) {
-            return Collections.emptyList();
-        } else {
-            Collection<Cache> result = new ArrayList<Cache>();
-            for (String cacheName : cacheNames) {
-                Cache cache = this.cacheManager.getCache(cacheName);
-                if (cache == null) {
-                    throw new IllegalArgumentException("Cannot find cache named '" + cacheName + "' for ");
-                }
-                result.add(cache);
-            }
-            return result;
-        }
-    }
-
     private String getInvocationCacheKey(String cacheKey) {
         return cacheKey + INVOCATION_CACHE_KEY_SUFFIX;
     }
 
-    private Collection<String> generateValue(Set<String> annotatedCacheNames) {
-        //获取注解上的value属性值（cacheNames）
-        Collection<String> cacheNames = new HashSet<>();
-        for (final String cacheName : annotatedCacheNames) {
-            String[] cacheParams = cacheName.split(SEPARATOR);
-            // 截取名称获取真实的value值
-            String realCacheName = cacheParams[0];
-            cacheNames.add(realCacheName);
-        }
-        return cacheNames;
+    @SuppressWarnings("unchecked")
+    private byte[] serializeValue(Object value) {
+        return ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serializeKey(String key) {
+        return ((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(key);
     }
 }
@@ -0,0 +1,78 @@
+package com.smarthito.cache.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 缓存值信封，在序列化后的缓存值前记录写入时间和有效时间
+ * 读取到缓存值后即可在本地计算剩余有效时间，不需要再向redis查询
+ * <p>
+ * 格式：1字节标记(0) + 8字节写入时间(毫秒) + 8字节有效时间(毫秒，0表示不过期) + 序列化后的缓存值
+ * json、smile序列化后的缓存值不会以0开头，开启信封前写入的旧数据仍然可以读取；
+ * 只有开启信封的缓存(或者关闭信封的迁移期间)识别信封，其他序列化器写入以0开头的数据不会被误认为信封
+ *
+ * @author yaojunguang
+ */
+public class CacheValueEnvelope {
+
+    /**
+     * 信封标记
+     */
+    public static final byte MARKER = 0;
+
+    private static final int HEADER_LENGTH = 1 + Long.BYTES + Long.BYTES;
+
+    /**
+     * 包装缓存值
+     *
+     * @param value     序列化后的缓存值
+     * @param writeTime 写入时间，毫秒
+     * @param ttl       有效时间，毫秒，0表示不过期
+     * @return 包装后的值
+     */
+    public static byte[] wrap(byte[] value, long writeTime, long ttl) {
+        return ByteBuffer.allocate(HEADER_LENGTH + value.length)
+                .put(MARKER)
+                .putLong(writeTime)
+                .putLong(ttl)
+                .put(value)
+                .array();
+    }
+
+    /**
+     * 是否是信封格式
+     *
+     * @param bytes redis中的值
+     * @return 是否是信封格式
+     */
+    public static boolean isEnvelope(byte[] bytes) {
+        return bytes.length >= HEADER_LENGTH && bytes[0] == MARKER;
+    }
+
+    /**
+     * 取出序列化后的缓存值
+     *
+     * @param bytes 信封格式的值
+     * @return 序列化后的缓存值
+     */
+    public static byte[] unwrap(byte[] bytes) {
+        return Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length);
+    }
+
+    /**
+     * 计算剩余有效时间
+     *
+     * @param bytes 信封格式的值
+     * @param now   当前时间，毫秒
+     * @return 剩余有效时间，毫秒，不过期返回-1
+     */
+    public static long getRemainingMillis(byte[] bytes, long now) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, Long.BYTES + Long.BYTES);
+        long writeTime = buffer.getLong();
+        long ttl = buffer.getLong();
+        if (ttl <= 0) {
+            return -1;
+        }
+        return Math.max(0, writeTime + ttl - now);
+    }
+}
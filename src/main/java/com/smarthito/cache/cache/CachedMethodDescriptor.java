@@ -0,0 +1,76 @@
+package com.smarthito.cache.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+
+/**
+ * 标记了缓存注解的方法描述
+ * id由bean类型和方法签名计算得出，各节点、每次启动都相同，redis中只保存id和参数
+ *
+ * @author yaojunguang
+ */
+public class CachedMethodDescriptor {
+
+    private final long id;
+
+    /**
+     * 启动扫描时得到的bean名称，运行时注册的为null，按类型获取bean
+     */
+    private final String beanName;
+
+    private final Class<?> beanType;
+
+    private final Method method;
+
+    /**
+     * 按方法参数的声明类型读写参数，避免每次创建
+     */
+    private final ObjectWriter[] argumentWriters;
+
+    private final ObjectReader[] argumentReaders;
+
+    CachedMethodDescriptor(long id, String beanName, Class<?> beanType, Method method, ObjectMapper objectMapper) {
+        this.id = id;
+        this.beanName = beanName;
+        this.beanType = beanType;
+        this.method = method;
+        // 非public的方法、非public类中的方法同样可以调用
+        ReflectionUtils.makeAccessible(method);
+        Type[] parameterTypes = method.getGenericParameterTypes();
+        this.argumentWriters = new ObjectWriter[parameterTypes.length];
+        this.argumentReaders = new ObjectReader[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            argumentWriters[i] = objectMapper.writerFor(objectMapper.constructType(parameterTypes[i]));
+            argumentReaders[i] = objectMapper.readerFor(objectMapper.constructType(parameterTypes[i]));
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getBeanName() {
+        return beanName;
+    }
+
+    public Class<?> getBeanType() {
+        return beanType;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    ObjectWriter[] getArgumentWriters() {
+        return argumentWriters;
+    }
+
+    ObjectReader[] getArgumentReaders() {
+        return argumentReaders;
+    }
+}
@@ -0,0 +1,226 @@
+package com.smarthito.cache.cache;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.smarthito.cache.utils.ObjectMapperUtils;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.core.MethodClassKey;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存方法注册表
+ * 启动时扫描所有单例bean上的@Cacheable方法，为每个方法生成稳定的id；
+ * redis中的方法信息只保存 格式标记 + 方法id + smile编码的参数，刷新时按id找回方法
+ * <p>
+ * 格式：1字节格式标记(1) + 8字节方法id + smile编码的参数数组(无参数时省略)
+ * 旧格式是json，以'['开头，读取时仍然兼容；方法id冲突时冲突的方法都使用旧格式
+ *
+ * @author yaojunguang
+ */
+@Slf4j
+public class CachedMethodRegistry implements SmartInitializingSingleton {
+
+    /**
+     * 紧凑格式的标记
+     */
+    public static final byte FORMAT_COMPACT = 1;
+
+    private static final int HEADER_LENGTH = 1 + Long.BYTES;
+
+    private final ObjectMapper objectMapper = ObjectMapperUtils.configure(new ObjectMapper(new SmileFactory()));
+
+    private final Map<Long, CachedMethodDescriptor> descriptors = new ConcurrentHashMap<>(64);
+
+    private final Map<MethodClassKey, CachedMethodDescriptor> methodDescriptors = new ConcurrentHashMap<>(64);
+
+    /**
+     * 冲突的方法id，这些id不再使用紧凑格式，已经写入的紧凑格式方法信息不再刷新
+     */
+    private final Set<Long> collidedIds = ConcurrentHashMap.newKeySet();
+
+    @Resource
+    private DefaultListableBeanFactory beanFactory;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (String beanName : beanFactory.getSingletonNames()) {
+            Object bean = beanFactory.getSingleton(beanName);
+            if (bean == null) {
+                continue;
+            }
+            Class<?> beanType = ClassUtils.getUserClass(AopUtils.getTargetClass(bean));
+            ReflectionUtils.doWithMethods(beanType,
+                    method -> register(beanName, beanType, method),
+                    method -> AnnotatedElementUtils.hasAnnotation(method, Cacheable.class));
+        }
+        log.info("缓存方法注册完成，共{}个方法", descriptors.size());
+    }
+
+    /**
+     * 注册方法，已注册的直接返回
+     *
+     * @param targetBean 目标对象(非代理)
+     * @param method     方法
+     * @return 方法描述，方法id与其他方法冲突时返回null，此时使用旧格式保存方法信息
+     */
+    public CachedMethodDescriptor register(Object targetBean, Method method) {
+        return register(null, getBeanType(targetBean), method);
+    }
+
+    private CachedMethodDescriptor register(String beanName, Class<?> beanType, Method method) {
+        MethodClassKey methodKey = new MethodClassKey(method, beanType);
+        CachedMethodDescriptor descriptor = methodDescriptors.get(methodKey);
+        if (descriptor != null) {
+            return descriptor;
+        }
+        long id = getMethodId(beanType, method);
+        if (collidedIds.contains(id)) {
+            return null;
+        }
+        descriptor = descriptors.computeIfAbsent(id, key -> new CachedMethodDescriptor(key, beanName, beanType, method, objectMapper));
+        if (!descriptor.getBeanType().equals(beanType) || !descriptor.getMethod().getName().equals(method.getName())
+                || !Arrays.equals(descriptor.getMethod().getParameterTypes(), method.getParameterTypes())) {
+            // 各节点注册的先后顺序可能不同，冲突的两个方法都不再使用这个id，保证任何节点都不会按id调用错误的方法
+            log.warn("缓存方法id冲突，改用旧格式保存方法信息：{}#{} 与 {}#{}", beanType.getName(), method.getName(),
+                    descriptor.getBeanType().getName(), descriptor.getMethod().getName());
+            collidedIds.add(id);
+            descriptors.remove(id);
+            methodDescriptors.values().removeIf(registered -> registered.getId() == id);
+            return null;
+        }
+        methodDescriptors.putIfAbsent(methodKey, descriptor);
+        return descriptor;
+    }
+
+    /**
+     * 编码方法调用信息
+     *
+     * @param descriptor 方法描述
+     * @param arguments  参数
+     * @return 紧凑格式的字节
+     */
+    public byte[] encode(CachedMethodDescriptor descriptor, Object[] arguments) {
+        ObjectWriter[] writers = descriptor.getArgumentWriters();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_LENGTH + writers.length * 16);
+        out.write(FORMAT_COMPACT);
+        out.writeBytes(ByteBuffer.allocate(Long.BYTES).putLong(descriptor.getId()).array());
+        if (writers.length > 0) {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                for (int i = 0; i < writers.length; i++) {
+                    writers[i].writeValue(generator, arguments[i]);
+                }
+                generator.writeEndArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 是否是紧凑格式
+     *
+     * @param bytes redis中保存的方法信息
+     * @return 是否是紧凑格式
+     */
+    public boolean isCompact(byte[] bytes) {
+        return bytes.length >= HEADER_LENGTH && bytes[0] == FORMAT_COMPACT;
+    }
+
+    /**
+     * 按方法id获取方法描述
+     *
+     * @param bytes 紧凑格式的方法信息
+     * @return 方法描述，本节点没有注册过该方法时返回null
+     */
+    public CachedMethodDescriptor getDescriptor(byte[] bytes) {
+        return descriptors.get(ByteBuffer.wrap(bytes, 1, Long.BYTES).getLong());
+    }
+
+    /**
+     * 按方法参数的声明类型读取参数
+     *
+     * @param descriptor 方法描述
+     * @param bytes      紧凑格式的方法信息
+     * @return 参数
+     */
+    public Object[] readArguments(CachedMethodDescriptor descriptor, byte[] bytes) {
+        ObjectReader[] readers = descriptor.getArgumentReaders();
+        Object[] arguments = new Object[readers.length];
+        if (readers.length == 0) {
+            return arguments;
+        }
+        try (JsonParser parser = objectMapper.getFactory().createParser(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("方法参数格式错误");
+            }
+            for (int i = 0; i < readers.length; i++) {
+                parser.nextToken();
+                arguments[i] = readers[i].readValue(parser);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return arguments;
+    }
+
+    /**
+     * 获取目标对象的类型，目标对象本身是jdk代理时取第一个接口
+     *
+     * @param targetBean 目标对象
+     * @return 类型
+     */
+    private Class<?> getBeanType(Object targetBean) {
+        Class<?> beanType = targetBean.getClass();
+        if (Proxy.isProxyClass(beanType) && beanType.getInterfaces().length > 0) {
+            return beanType.getInterfaces()[0];
+        }
+        return ClassUtils.getUserClass(beanType);
+    }
+
+    /**
+     * 由bean类型和方法签名计算稳定的方法id
+     *
+     * @param beanType bean类型
+     * @param method   方法
+     * @return id
+     */
+    private long getMethodId(Class<?> beanType, Method method) {
+        StringBuilder signature = new StringBuilder(beanType.getName()).append('#').append(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                signature.append(',');
+            }
+            signature.append(parameterTypes[i].getName());
+        }
+        signature.append(')');
+        return ByteBuffer.wrap(DigestUtils.md5Digest(signature.toString().getBytes(StandardCharsets.UTF_8))).getLong();
+    }
+}
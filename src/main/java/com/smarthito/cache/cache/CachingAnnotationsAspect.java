@@ -1,31 +1,72 @@
 package com.smarthito.cache.cache;
 
+import com.smarthito.cache.init.SpringCacheRedisPlusProperties;
 import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.core.BridgeMethodResolver;
+import org.springframework.core.Ordered;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * 记录@Cacheable方法的调用信息，供缓存未命中写入时注册方法信息
+ * 切面必须在spring的缓存拦截器外层执行，才能在缓存写入时取到调用信息
+ * 每个(方法, 目标类)只解析一次注解，之后每次调用按方法、目标对象的类型查两次map，不创建key对象
+ *
  * @author yaojunguang at 2020/9/28 2:39 下午
  */
+@Slf4j
 @Aspect
 @Component
-public class CachingAnnotationsAspect {
+public class CachingAnnotationsAspect implements Ordered, SmartInitializingSingleton {
 
+    /**
+     * 方法 -> 目标对象的类型 -> 元数据，没有目标对象时类型为Void
+     */
+    private final Map<Method, Map<Class<?>, CacheableOperation>> operations = new ConcurrentHashMap<>(64);
+
+    @Resource
+    private DefaultListableBeanFactory beanFactory;
     @Resource
-    private CacheSupport cacheSupport;
+    private SpringCacheRedisPlusProperties properties;
+
+    /**
+     * 开启预先解析时，启动后解析所有单例bean上的@Cacheable方法
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (properties == null || !properties.isPrecomputeMetadata()) {
+            return;
+        }
+        for (String beanName : beanFactory.getSingletonNames()) {
+            Object bean = beanFactory.getSingleton(beanName);
+            if (bean == null) {
+                continue;
+            }
+            Class<?> targetClass = ClassUtils.getUserClass(AopUtils.getTargetClass(bean));
+            ReflectionUtils.doWithMethods(targetClass,
+                    method -> getOperations(method).computeIfAbsent(targetClass, key -> resolveOperation(method, targetClass)),
+                    method -> method.isAnnotationPresent(Cacheable.class));
+        }
+        log.info("缓存方法元数据预先解析完成，共{}个方法", operations.values().stream().mapToInt(Map::size).sum());
+    }
 
     private <T extends Annotation> List<T> getMethodAnnotations(AnnotatedElement ae, Class<T> annotationType) {
         List<T> annotations = new ArrayList<T>(2);
@@ -44,16 +85,10 @@ public class CachingAnnotationsAspect {
         return (annotations.isEmpty() ? null : annotations);
     }
 
-    private Method getSpecificmethod(ProceedingJoinPoint pjp) {
-        MethodSignature methodSignature = (MethodSignature) pjp.getSignature();
-        Method method = methodSignature.getMethod();
+    private Method getSpecificmethod(Method method, Class<?> targetClass) {
         // The method may be on an interface, but we need attributes from the
         // target class. If the target class is null, the method will be
         // unchanged.
-        Class<?> targetClass = AopProxyUtils.ultimateTargetClass(pjp.getTarget());
-        if (targetClass == null && pjp.getTarget() != null) {
-            targetClass = pjp.getTarget().getClass();
-        }
         Method specificMethod = ClassUtils.getMostSpecificMethod(method, targetClass);
         // If we are dealing with method with generic parameters, find the
         // original method.
@@ -65,27 +100,93 @@ public class CachingAnnotationsAspect {
     public void pointcut() {
     }
 
-    @Around("pointcut()")
-    public Object registerInvocation(ProceedingJoinPoint joinPoint) throws Throwable {
-
-        Method method = this.getSpecificmethod(joinPoint);
+    /**
+     * 获取方法的缓存元数据，按目标对象的实际类型查找，第一次调用时才解析最终目标类
+     * 命中时先get，不经过computeIfAbsent，不创建lambda
+     *
+     * @param method 方法
+     * @param target 目标对象
+     * @return 元数据
+     */
+    private CacheableOperation getOperation(Method method, Object target) {
+        Map<Class<?>, CacheableOperation> byClass = getOperations(method);
+        Class<?> targetType = target == null ? Void.class : target.getClass();
+        CacheableOperation operation = byClass.get(targetType);
+        if (operation != null) {
+            return operation;
+        }
+        return byClass.computeIfAbsent(targetType,
+                key -> resolveOperation(method, target == null ? null : AopProxyUtils.ultimateTargetClass(target)));
+    }
 
-        List<Cacheable> annotations = this.getMethodAnnotations(method, Cacheable.class);
+    /**
+     * 方法在各个目标类上的元数据
+     *
+     * @param method 方法
+     * @return 目标对象的类型 -> 元数据
+     */
+    private Map<Class<?>, CacheableOperation> getOperations(Method method) {
+        Map<Class<?>, CacheableOperation> byClass = operations.get(method);
+        return byClass != null ? byClass : operations.computeIfAbsent(method, key -> new ConcurrentHashMap<>(4));
+    }
 
+    /**
+     * 解析方法在目标类上的缓存元数据
+     *
+     * @param method      方法
+     * @param targetClass 目标类
+     * @return 元数据
+     */
+    private CacheableOperation resolveOperation(Method method, Class<?> targetClass) {
+        Method specificMethod = getSpecificmethod(method, targetClass);
+        List<Cacheable> annotations = getMethodAnnotations(specificMethod, Cacheable.class);
         Set<String> cacheSet = new HashSet<>();
-        String cacheKey = null;
-        for (Cacheable cacheables : annotations) {
-            cacheSet.addAll(Arrays.asList(cacheables.value()));
-            cacheKey = cacheables.key();
+        if (annotations != null) {
+            for (Cacheable cacheables : annotations) {
+                cacheSet.addAll(Arrays.asList(cacheables.value()));
+                cacheSet.addAll(Arrays.asList(cacheables.cacheNames()));
+            }
         }
+        return new CacheableOperation(specificMethod, method.getParameterTypes(), Collections.unmodifiableSet(cacheSet));
+    }
 
-        if (joinPoint.getSignature() instanceof MethodSignature) {
-            Class[] parameterTypes = ((MethodSignature) joinPoint.getSignature()).getParameterTypes();
-            cacheSupport.registerInvocation(joinPoint.getTarget(), method, parameterTypes,
-                    joinPoint.getArgs(), cacheSet, cacheKey);
+    @Around("pointcut()")
+    public Object registerInvocation(ProceedingJoinPoint joinPoint) throws Throwable {
+        Object target = joinPoint.getTarget();
+        CacheableOperation operation = getOperation(((MethodSignature) joinPoint.getSignature()).getMethod(), target);
+
+        // 只记录调用信息，缓存未命中写入时才注册到redis
+        CacheInvocationContext context = new CacheInvocationContext(target, operation.method,
+                operation.parameterTypes, joinPoint.getArgs(), operation.cacheNames);
+        CacheInvocationContext previous = CacheInvocationContext.push(context);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            context.releaseLoadLocks();
+            CacheInvocationContext.restore(previous);
         }
+    }
 
-        return joinPoint.proceed();
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    /**
+     * 方法的缓存元数据，创建后不再修改
+     */
+    private static final class CacheableOperation {
+
+        private final Method method;
 
+        private final Class[] parameterTypes;
+
+        private final Set<String> cacheNames;
+
+        private CacheableOperation(Method method, Class[] parameterTypes, Set<String> cacheNames) {
+            this.method = method;
+            this.parameterTypes = parameterTypes;
+            this.cacheNames = cacheNames;
+        }
     }
 }
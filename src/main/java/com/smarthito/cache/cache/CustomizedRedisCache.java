@@ -1,13 +1,45 @@
 package com.smarthito.cache.cache;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.smarthito.cache.local.LocalCache;
 import com.smarthito.cache.lock.RedisLock;
+import com.smarthito.cache.lock.RedisLockFactory;
+import com.smarthito.cache.metrics.CacheMetrics;
+import com.smarthito.cache.metrics.CacheMetrics.RefreshOutcome;
+import com.smarthito.cache.refresh.CacheRefreshExecutor;
+import com.smarthito.cache.refresh.RefreshScheduler;
+import com.smarthito.cache.script.LuaScripts;
 import com.smarthito.cache.utils.SpringContextUtils;
-import com.smarthito.cache.utils.ThreadTaskUtils;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
 import org.springframework.data.redis.cache.RedisCache;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Created by @author yangmingtian on 2020/1/8
@@ -19,6 +51,10 @@ public class CustomizedRedisCache extends RedisCache {
         return SpringContextUtils.getBean(CacheSupport.class);
     }
 
+    private static final int PENDING_INVOCATION_SIZE = 10000;
+
+    private static final Duration PENDING_INVOCATION_EXPIRE = Duration.ofMinutes(1);
+
     /**
      * 缓存主动在失效前强制刷新缓存的时间
      * 单位：秒
@@ -27,62 +63,1029 @@ public class CustomizedRedisCache extends RedisCache {
     private final RedisCacheConfiguration config;
     private final RedisTemplate<String, Object> redisOperations;
 
-    protected CustomizedRedisCache(String name, RedisCacheWriter cacheWriter, RedisCacheConfiguration config, RedisTemplate<String, Object> redisOperations, Long preloadSecondTime) {
+    /**
+     * 本地一级缓存，未开启时为null
+     */
+    private final LocalCache localCache;
+
+    /**
+     * 是否使用信封保存缓存值，开启后剩余时间在本地计算
+     */
+    private final boolean envelope;
+
+    /**
+     * 读取时是否识别信封：开启了信封，或者关闭信封后旧数据过期前的迁移期间
+     * 没有开启时不识别，自定义序列化器写入的数据以信封标记开头时不会被误认为信封
+     */
+    private final boolean readEnvelope;
+
+    /**
+     * 概率提前刷新(XFetch)的系数beta，0表示使用固定的刷新窗口
+     */
+    private final double xfetchBeta;
+
+    /**
+     * 观测到的加载耗时(纳秒)的滑动平均
+     */
+    private volatile long loadNanos;
+
+    /**
+     * 自动刷新的执行器
+     */
+    private final CacheRefreshExecutor refreshExecutor;
+
+    /**
+     * 非sync的异步方法未命中时保存的调用信息，spring在方法返回的结果完成后才调用put，此时已经不在切面的线程中；
+     * key为redis中的缓存key，写入时取出，方法失败没有写入的到期后删除
+     */
+    private final com.github.benmanes.caffeine.cache.Cache<String, CacheInvocationContext> pendingInvocations = Caffeine.newBuilder()
+            .maximumSize(PENDING_INVOCATION_SIZE).expireAfterWrite(PENDING_INVOCATION_EXPIRE).build();
+
+    /**
+     * 本节点正在等待或执行刷新的缓存key，同一个key同时只提交一次刷新，只抢一次分布式锁
+     */
+    private final Set<String> refreshingKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 未命中时的跨节点单飞加载，未开启时为null
+     */
+    private final SingleFlightLoader singleFlight;
+
+    /**
+     * 刷新锁的工厂，为null时刷新锁不续期
+     */
+    private final RedisLockFactory lockFactory;
+
+    /**
+     * 非阻塞读取缓存值和剩余时间，连接工厂不支持响应式连接时为null
+     */
+    private final AsyncCacheReader asyncReader;
+
+    /**
+     * 指标记录
+     */
+    private final CacheMetrics metrics;
+
+    /**
+     * 按到期时间定时刷新，为null时在读取时判断是否需要刷新
+     */
+    private final RefreshScheduler scheduler;
+
+    /**
+     * 读取时是否需要判断刷新，定时刷新的缓存读取时不再查询剩余时间
+     */
+    private final boolean readRefresh;
+
+    /**
+     * 缓存统计，lua脚本、MGET等不经过RedisCacheWriter的读写在这里计数
+     */
+    private final CacheStatisticsCollector statistics;
+
+    protected CustomizedRedisCache(String name, RedisCacheWriter cacheWriter, RedisCacheConfiguration config, RedisTemplate<String, Object> redisOperations, Long preloadSecondTime,
+                                   LocalCache localCache, boolean envelope, boolean readEnvelope, double xfetchBeta, CacheRefreshExecutor refreshExecutor,
+                                   SingleFlightLoader singleFlight, RedisLockFactory lockFactory, CacheMetrics metrics, RefreshScheduler scheduler,
+                                   CacheStatisticsCollector statistics) {
         super(name, cacheWriter, config);
         this.config = config;
         this.redisOperations = redisOperations;
         // 指定自动刷新时间
         this.preloadSecondTime = preloadSecondTime;
+        this.localCache = localCache;
+        this.envelope = envelope;
+        this.readEnvelope = envelope || readEnvelope;
+        this.xfetchBeta = xfetchBeta;
+        this.refreshExecutor = refreshExecutor;
+        this.singleFlight = singleFlight;
+        this.lockFactory = lockFactory;
+        this.asyncReader = AsyncCacheReader.create(redisOperations.getConnectionFactory());
+        this.metrics = metrics == null ? CacheMetrics.NOOP : metrics;
+        this.scheduler = preloadSecondTime > 0 ? scheduler : null;
+        this.readRefresh = preloadSecondTime > 0 && this.scheduler == null;
+        this.statistics = statistics == null ? CacheStatisticsCollector.none() : statistics;
     }
 
 
     /**
-     * 重写get方法，获取到缓存后再次取缓存剩余的时间，如果时间小余我们配置的刷新时间就手动刷新缓存。
+     * 重写get方法，获取缓存的同时取缓存剩余的时间，如果时间小余我们配置的刷新时间就手动刷新缓存。
+     * 缓存值和剩余时间通过一个lua脚本在一次往返中取回；使用信封保存时剩余时间直接从缓存值中计算。
      * 为了不影响get的性能，启用后台线程去完成缓存的刷。
      * 并且只放一个线程去刷新数据。
+     * 开启了本地缓存时先查本地缓存，命中后直接返回，不访问redis。
+     * 开启了单飞加载时，未命中的调用方中只有一个去执行方法，其他的等待加载完成。
      *
      * @param key 名称
      * @return 结果
      */
     @Override
     public ValueWrapper get(Object key) {
-        ValueWrapper valueWrapper = super.get(key);
-        if (null != valueWrapper) {
-            // 刷新缓存数据
-            refreshCache(key, getCacheKey(key));
+        long start = System.nanoTime();
+        ValueWrapper result = getOrLock(key);
+        metrics.recordGet(result != null, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * 读取缓存，开启了单飞加载时未命中的调用方获取加载锁或者等待加载完成
+     *
+     * @param key 名称
+     * @return 结果
+     */
+    private ValueWrapper getOrLock(Object key) {
+        String cacheKeyStr = getCacheKey(key);
+        ValueWrapper result = getValue(key, cacheKeyStr);
+        if (result != null || singleFlight == null) {
+            return result;
+        }
+        CacheInvocationContext context = CacheInvocationContext.current();
+        // 只有在切面内才能保证方法结束时释放加载锁
+        if (context == null || !context.hasCache(getName()) || context.isHoldingLoadLock(cacheKeyStr)) {
+            return null;
+        }
+        RedisLock lock = singleFlight.tryLock(cacheKeyStr);
+        if (lock != null) {
+            // 返回未命中，由当前调用执行方法，写入缓存后释放
+            context.holdLoadLock(cacheKeyStr, () -> singleFlight.release(lock, cacheKeyStr));
+            return null;
+        }
+        return singleFlight.await(cacheKeyStr, () -> getValue(key, cacheKeyStr));
+    }
+
+    /**
+     * 读取缓存，需要时触发刷新
+     *
+     * @param key         名称
+     * @param cacheKeyStr redis中的缓存key
+     * @return 结果
+     */
+    private ValueWrapper getValue(Object key, String cacheKeyStr) {
+        if (localCache != null) {
+            Object value = localCache.get(cacheKeyStr);
+            if (value != null) {
+                touchScheduled(cacheKeyStr);
+                return toValueWrapper(value);
+            }
+        }
+        if (!readRefresh || config.isTimeToIdleEnabled()) {
+            // 没有配置自动刷新或者定时刷新，不需要剩余时间
+            ValueWrapper valueWrapper = super.get(key);
+            if (valueWrapper != null) {
+                touchScheduled(cacheKeyStr);
+            }
+            return valueWrapper;
+        }
+
+        byte[] cacheKey = serializeCacheKey(cacheKeyStr);
+        byte[] bytes;
+        long ttl;
+        if (envelope) {
+            bytes = getCacheWriter().get(getName(), cacheKey);
+            if (bytes == null) {
+                return null;
+            }
+            // 开启信封前写入的旧数据仍然需要查询剩余时间
+            ttl = CacheValueEnvelope.isEnvelope(bytes) ? CacheValueEnvelope.getRemainingMillis(bytes, System.currentTimeMillis())
+                    : getRemainingMillis(cacheKey);
+        } else {
+            long start = System.nanoTime();
+            List<Object> result = redisOperations.execute((RedisCallback<List<Object>>) connection ->
+                    LuaScripts.GET_WITH_TTL.eval(connection.scriptingCommands(), ReturnType.MULTI, 1, cacheKey));
+            metrics.recordTtlCheck(System.nanoTime() - start);
+            boolean hit = result != null && !result.isEmpty() && result.get(0) instanceof byte[];
+            recordStatistics(hit ? 1 : 0, hit ? 0 : 1);
+            if (!hit) {
+                return null;
+            }
+            bytes = (byte[]) result.get(0);
+            ttl = result.size() > 1 && result.get(1) instanceof Long ? (Long) result.get(1) : -1;
+        }
+        return toValueWrapper(onRedisHit(key, cacheKeyStr, bytes, ttl, null));
+    }
+
+    /**
+     * 异步读取缓存，用于返回CompletableFuture、Mono、Flux的方法
+     * 与get相同：先查本地缓存，需要刷新时同时取回剩余时间，刷新在后台执行，整个过程不阻塞调用线程；
+     * 开启了time to idle的缓存使用父类的实现，驱动不支持异步读取时与父类一样抛出异常；
+     * 在切面内未命中时保存调用信息，结果完成后在其他线程中put时注册方法信息
+     *
+     * @param key 名称
+     * @return 结果
+     */
+    @Override
+    public CompletableFuture<ValueWrapper> retrieve(Object key) {
+        CacheInvocationContext context = CacheInvocationContext.current();
+        if (context == null || !context.hasCache(getName())) {
+            return timedRetrieve(key);
         }
-        return valueWrapper;
+        return timedRetrieve(key).thenApply(wrapper -> {
+            if (wrapper == null) {
+                pendingInvocations.put(getCacheKey(key), context);
+            }
+            return wrapper;
+        });
+    }
+
+    private CompletableFuture<ValueWrapper> timedRetrieve(Object key) {
+        long start = System.nanoTime();
+        return retrieveValue(key).whenComplete((result, e) -> metrics.recordGet(result != null, System.nanoTime() - start));
     }
 
-    private void refreshCache(Object key, String cacheKeyStr) {
+    private CompletableFuture<ValueWrapper> retrieveValue(Object key) {
+        String cacheKeyStr = getCacheKey(key);
+        if (localCache != null) {
+            Object value = localCache.get(cacheKeyStr);
+            if (value != null) {
+                touchScheduled(cacheKeyStr);
+                return CompletableFuture.completedFuture(toValueWrapper(value));
+            }
+        }
+        if (!getCacheWriter().supportsAsyncRetrieve() || config.isTimeToIdleEnabled()) {
+            return super.retrieve(key).thenApply(valueWrapper -> {
+                if (valueWrapper != null) {
+                    touchScheduled(cacheKeyStr);
+                }
+                return valueWrapper;
+            });
+        }
+        byte[] cacheKey = serializeCacheKey(cacheKeyStr);
+        CompletableFuture<List<Object>> result;
+        if (readRefresh && !envelope && asyncReader != null) {
+            result = asyncReader.getWithTtl(cacheKey).thenApply(values -> {
+                boolean hit = values != null && !values.isEmpty() && values.get(0) instanceof byte[];
+                recordStatistics(hit ? 1 : 0, hit ? 0 : 1);
+                return values;
+            });
+        } else {
+            // 不需要剩余时间，或者剩余时间从信封中计算；开启信封前写入的旧数据不再查询剩余时间
+            result = getCacheWriter().retrieve(getName(), cacheKey).thenApply(bytes -> bytes == null ? null
+                    : Arrays.asList(bytes, readRefresh && readEnvelope && CacheValueEnvelope.isEnvelope(bytes)
+                    ? CacheValueEnvelope.getRemainingMillis(bytes, System.currentTimeMillis()) : -1L));
+        }
+        return result.thenApply(values -> {
+            if (values == null || !(values.get(0) instanceof byte[])) {
+                return null;
+            }
+            long ttl = values.get(1) instanceof Long ? (Long) values.get(1) : -1;
+            return toValueWrapper(onRedisHit(key, cacheKeyStr, (byte[]) values.get(0), ttl, null));
+        });
+    }
+
+    /**
+     * 异步读取缓存，未命中时执行加载方法并异步写入，sync=true时使用
+     * 写入后与put相同：失效本地缓存并注册方法信息，方法信息在调用线程中取得
+     *
+     * @param key         名称
+     * @param valueLoader 加载方法
+     * @param <T>         类型
+     * @return 结果
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> retrieve(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        CacheInvocationContext context = CacheInvocationContext.current();
+        return timedRetrieve(key).thenCompose(wrapper -> wrapper != null ? CompletableFuture.completedFuture((T) wrapper.get())
+                : valueLoader.get().thenCompose(value -> store(key, value, context).thenApply(stored -> value)));
+    }
+
+    /**
+     * 异步写入缓存
+     *
+     * @param key     名称
+     * @param value   值
+     * @param context 调用信息，可以为null
+     * @return 写入和后续处理完成
+     */
+    private CompletableFuture<Void> store(Object key, Object value, CacheInvocationContext context) {
+        Object cacheValue = preProcessCacheValue(value);
+        if (cacheValue == null) {
+            throw new IllegalArgumentException(String.format("Cache '%s' does not allow 'null' values", getName()));
+        }
+        String cacheKeyStr = getCacheKey(key);
+        Duration ttl = config.getTtlFunction().getTimeToLive(key, value);
+        // 失效消息和方法信息注册是阻塞的redis命令，不能在lettuce的事件循环线程中执行，交给刷新执行器
+        return getCacheWriter().store(getName(), serializeCacheKey(cacheKeyStr), serializeCacheValue(cacheValue, ttl), ttl)
+                .thenRunAsync(() -> {
+                    evictLocal(key);
+                    registerInvocation(key, context, ttl);
+                }, refreshExecutor::execute);
+    }
+
+    /**
+     * 从redis读取到缓存值后放入本地缓存，需要时触发刷新
+     *
+     * @param key         名称
+     * @param cacheKeyStr redis中的缓存key
+     * @param bytes       redis中的值
+     * @param ttl         剩余时间，毫秒
+     * @param staleKeys   批量刷新时收集需要刷新的名称，为null时直接触发刷新
+     * @return 缓存值
+     */
+    private Object onRedisHit(Object key, String cacheKeyStr, byte[] bytes, long ttl, Map<Object, String> staleKeys) {
+        Object value = deserializeCacheValue(bytes);
+        touchScheduled(cacheKeyStr);
+        if (localCache != null) {
+            // 本地缓存在进入刷新窗口前过期，保证刷新判断仍然会发生
+            long expireMillis = ttl < 0 ? Long.MAX_VALUE : ttl - TimeUnit.SECONDS.toMillis(preloadSecondTime);
+            localCache.put(cacheKeyStr, value, bytes.length, TimeUnit.MILLISECONDS.toNanos(expireMillis));
+        }
+        // 刷新缓存数据
+        if (staleKeys == null) {
+            refreshCache(key, cacheKeyStr, ttl);
+        } else if (shouldRefresh(ttl) && refreshingKeys.add(cacheKeyStr)) {
+            staleKeys.put(key, cacheKeyStr);
+        }
+        return value;
+    }
+
+    /**
+     * 批量获取缓存，一次(集群时每个slot一次)往返取回所有值，需要时一并取回剩余时间并触发刷新
+     * 开启了time to idle的缓存逐个读取
+     *
+     * @param keys 名称
+     * @return 命中的缓存，未命中的名称不在结果中
+     */
+    public Map<Object, ValueWrapper> getAll(Collection<?> keys) {
+        return getAll(keys, null);
+    }
+
+    /**
+     * 批量获取缓存，需要刷新的名称一起交给refresher在后台刷新
+     *
+     * @param keys      名称
+     * @param refresher 批量刷新方法，参数为需要刷新的名称；为null时按每个key注册的方法信息刷新
+     * @return 命中的缓存，未命中的名称不在结果中
+     */
+    public Map<Object, ValueWrapper> getAll(Collection<?> keys, Consumer<List<Object>> refresher) {
+        long start = System.nanoTime();
+        Map<Object, ValueWrapper> result = readAll(keys, refresher);
+        metrics.recordBatchGet(result.size(), keys.size() - result.size(), System.nanoTime() - start);
+        return result;
+    }
+
+    private Map<Object, ValueWrapper> readAll(Collection<?> keys, Consumer<List<Object>> refresher) {
+        Map<Object, String> staleKeys = refresher == null ? null : new LinkedHashMap<>();
+        Map<Object, ValueWrapper> result = new LinkedHashMap<>(keys.size() * 4 / 3 + 1);
+        List<Object> missKeys = new ArrayList<>(keys.size());
+        List<String> missCacheKeys = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            if (config.isTimeToIdleEnabled()) {
+                ValueWrapper valueWrapper = getValue(key, getCacheKey(key));
+                if (valueWrapper != null) {
+                    result.put(key, valueWrapper);
+                }
+                continue;
+            }
+            String cacheKeyStr = getCacheKey(key);
+            Object value = localCache == null ? null : localCache.get(cacheKeyStr);
+            if (value != null) {
+                touchScheduled(cacheKeyStr);
+                result.put(key, toValueWrapper(value));
+            } else {
+                missKeys.add(key);
+                missCacheKeys.add(cacheKeyStr);
+            }
+        }
+        if (missKeys.isEmpty()) {
+            return result;
+        }
+        byte[][] cacheKeys = new byte[missKeys.size()][];
+        for (int i = 0; i < cacheKeys.length; i++) {
+            cacheKeys[i] = serializeCacheKey(missCacheKeys.get(i));
+        }
+        boolean refresh = readRefresh;
+        // 使用信封时剩余时间在本地计算，只需要取值
+        List<Object> values = refresh && !envelope ? getAllWithTtl(cacheKeys) : getAllValues(cacheKeys);
+        int step = refresh && !envelope ? 2 : 1;
+        int hits = 0;
+        for (int i = 0; i < cacheKeys.length; i++) {
+            hits += values.get(i * step) instanceof byte[] ? 1 : 0;
+        }
+        recordStatistics(hits, cacheKeys.length - hits);
+        for (int i = 0; i < cacheKeys.length; i++) {
+            Object bytes = values.get(i * step);
+            if (!(bytes instanceof byte[])) {
+                continue;
+            }
+            Object key = missKeys.get(i);
+            String cacheKeyStr = missCacheKeys.get(i);
+            byte[] value = (byte[]) bytes;
+            if (!refresh) {
+                Object cacheValue = deserializeCacheValue(value);
+                touchScheduled(cacheKeyStr);
+                if (localCache != null) {
+                    localCache.put(cacheKeyStr, cacheValue, value.length);
+                }
+                result.put(key, toValueWrapper(cacheValue));
+                continue;
+            }
+            long ttl;
+            if (envelope) {
+                ttl = CacheValueEnvelope.isEnvelope(value) ? CacheValueEnvelope.getRemainingMillis(value, System.currentTimeMillis())
+                        : getRemainingMillis(cacheKeys[i]);
+            } else {
+                Object pttl = values.get(i * 2 + 1);
+                ttl = pttl instanceof Long ? (Long) pttl : -1;
+            }
+            result.put(key, toValueWrapper(onRedisHit(key, cacheKeyStr, value, ttl, staleKeys)));
+        }
+        if (staleKeys != null && !staleKeys.isEmpty()) {
+            refreshAll(staleKeys, refresher);
+        }
+        return result;
+    }
+
+    /**
+     * 后台批量刷新，逐个获取刷新锁，只刷新拿到锁的名称
+     *
+     * @param staleKeys 名称 -> redis中的缓存key
+     * @param refresher 批量刷新方法
+     */
+    private void refreshAll(Map<Object, String> staleKeys, Consumer<List<Object>> refresher) {
+        boolean submitted = refreshExecutor.submit(getName(), () -> {
+            List<RedisLock> locks = new ArrayList<>(staleKeys.size());
+            List<Object> keys = new ArrayList<>(staleKeys.size());
+            try {
+                staleKeys.forEach((key, cacheKeyStr) -> {
+                    RedisLock redisLock = newRefreshLock(cacheKeyStr);
+                    if (redisLock.lock()) {
+                        locks.add(redisLock);
+                        keys.add(key);
+                    }
+                });
+                if (keys.size() < staleKeys.size()) {
+                    metrics.recordRefresh(RefreshOutcome.SKIPPED, staleKeys.size() - keys.size());
+                }
+                if (!keys.isEmpty()) {
+                    log.info("refresh keys:{}", keys);
+                    refresher.accept(keys);
+                    metrics.recordRefresh(RefreshOutcome.EXECUTED, keys.size());
+                }
+            } catch (Exception e) {
+                metrics.recordRefresh(RefreshOutcome.FAILED, keys.size());
+                log.info(e.getMessage(), e);
+            } finally {
+                locks.forEach(RedisLock::unlock);
+                refreshingKeys.removeAll(staleKeys.values());
+            }
+        });
+        if (submitted) {
+            metrics.recordRefresh(RefreshOutcome.TRIGGERED, staleKeys.size());
+        } else {
+            metrics.recordRefresh(RefreshOutcome.SKIPPED, staleKeys.size());
+            refreshingKeys.removeAll(staleKeys.values());
+        }
+    }
+
+    /**
+     * MGET批量取值，集群时由连接按slot拆分
+     *
+     * @param cacheKeys 序列化后的缓存key
+     * @return 值，与key一一对应
+     */
+    private List<Object> getAllValues(byte[][] cacheKeys) {
+        List<byte[]> values = redisOperations.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(cacheKeys));
+        return values == null ? Arrays.asList(new Object[cacheKeys.length]) : new ArrayList<>(values);
+    }
+
+    /**
+     * 批量取值和剩余时间，集群时按slot分组执行
+     *
+     * @param cacheKeys 序列化后的缓存key
+     * @return 值1, 剩余时间1, 值2, 剩余时间2...
+     */
+    private List<Object> getAllWithTtl(byte[][] cacheKeys) {
+        Object[] result = new Object[cacheKeys.length * 2];
+        redisOperations.execute((RedisCallback<Object>) connection -> {
+            for (int[] group : groupBySlot(connection, cacheKeys)) {
+                byte[][] groupKeys = new byte[group.length][];
+                for (int i = 0; i < group.length; i++) {
+                    groupKeys[i] = cacheKeys[group[i]];
+                }
+                List<Object> values = LuaScripts.MGET_WITH_TTL.eval(connection.scriptingCommands(), ReturnType.MULTI, groupKeys.length, groupKeys);
+                for (int i = 0; values != null && i < group.length && i * 2 + 1 < values.size(); i++) {
+                    result[group[i] * 2] = values.get(i * 2);
+                    result[group[i] * 2 + 1] = values.get(i * 2 + 1);
+                }
+            }
+            return null;
+        });
+        return Arrays.asList(result);
+    }
+
+    /**
+     * 批量写入缓存，单机时pipeline执行SET PX，集群时每个slot执行一次lua
+     * 批量写入不会注册方法信息，不参与自动刷新
+     *
+     * @param values 名称 -> 值
+     */
+    public void putAll(Map<?, ?> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        int size = values.size();
+        byte[][] cacheKeys = new byte[size][];
+        byte[][] cacheValues = new byte[size][];
+        long[] ttls = new long[size];
+        List<String> cacheKeyStrs = new ArrayList<>(size);
+        int index = 0;
+        for (Map.Entry<?, ?> entry : values.entrySet()) {
+            Object cacheValue = preProcessCacheValue(entry.getValue());
+            if (cacheValue == null) {
+                throw new IllegalArgumentException(String.format("Cache '%s' does not allow 'null' values", getName()));
+            }
+            String cacheKeyStr = getCacheKey(entry.getKey());
+            cacheKeyStrs.add(cacheKeyStr);
+            cacheKeys[index] = serializeCacheKey(cacheKeyStr);
+            Duration ttl = config.getTtlFunction().getTimeToLive(entry.getKey(), entry.getValue());
+            cacheValues[index] = serializeCacheValue(cacheValue, ttl);
+            ttls[index] = ttl == null || ttl.isNegative() ? 0 : ttl.toMillis();
+            index++;
+        }
+        redisOperations.execute((RedisCallback<Object>) connection -> {
+            if (connection instanceof RedisClusterConnection) {
+                putAllBySlot(connection, cacheKeys, cacheValues, ttls);
+                return null;
+            }
+            connection.openPipeline();
+            try {
+                for (int i = 0; i < size; i++) {
+                    connection.stringCommands().set(cacheKeys[i], cacheValues[i],
+                            ttls[i] > 0 ? Expiration.milliseconds(ttls[i]) : Expiration.persistent(), RedisStringCommands.SetOption.upsert());
+                }
+            } finally {
+                connection.closePipeline();
+            }
+            return null;
+        });
+        for (int i = 0; i < size; i++) {
+            statistics.incPuts(getName());
+        }
+        if (localCache != null) {
+            cacheKeyStrs.forEach(localCache::evict);
+        }
+        if (scheduler != null) {
+            // 定时刷新的缓存读取时不再判断刷新，批量写入的key同样需要登记
+            Map<String, Long> refreshAts = new LinkedHashMap<>(size * 4 / 3 + 1);
+            long now = System.currentTimeMillis();
+            long preloadMillis = TimeUnit.SECONDS.toMillis(preloadSecondTime);
+            for (int i = 0; i < size; i++) {
+                if (ttls[i] > 0) {
+                    refreshAts.put(cacheKeyStrs.get(i), now + ttls[i] - preloadMillis);
+                    touchScheduled(cacheKeyStrs.get(i));
+                }
+            }
+            scheduler.schedule(getName(), refreshAts);
+        }
+    }
+
+    private void putAllBySlot(RedisConnection connection, byte[][] cacheKeys, byte[][] cacheValues, long[] ttls) {
+        for (int[] group : groupBySlot(connection, cacheKeys)) {
+            byte[][] keysAndArgs = new byte[group.length * 3][];
+            for (int i = 0; i < group.length; i++) {
+                keysAndArgs[i] = cacheKeys[group[i]];
+                keysAndArgs[group.length + i] = cacheValues[group[i]];
+                keysAndArgs[group.length * 2 + i] = Long.toString(ttls[group[i]]).getBytes(StandardCharsets.UTF_8);
+            }
+            LuaScripts.MSET_WITH_TTL.eval(connection.scriptingCommands(), ReturnType.INTEGER, group.length, keysAndArgs);
+        }
+    }
+
+    /**
+     * 按slot分组，lua脚本的所有key必须在同一个slot，单机时只有一组
+     *
+     * @param connection 连接
+     * @param cacheKeys  序列化后的缓存key
+     * @return 每组key的下标
+     */
+    private List<int[]> groupBySlot(RedisConnection connection, byte[][] cacheKeys) {
+        int[] all = new int[cacheKeys.length];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        if (!(connection instanceof RedisClusterConnection)) {
+            return List.of(all);
+        }
+        Map<Integer, List<Integer>> slots = new LinkedHashMap<>();
+        for (int i = 0; i < cacheKeys.length; i++) {
+            slots.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(cacheKeys[i]), slot -> new ArrayList<>()).add(i);
+        }
+        List<int[]> groups = new ArrayList<>(slots.size());
+        for (List<Integer> slot : slots.values()) {
+            groups.add(slot.stream().mapToInt(Integer::intValue).toArray());
+        }
+        return groups;
+    }
+
+    /**
+     * 记录不经过RedisCacheWriter的读取，与RedisCacheWriter.get的计数方式相同
+     *
+     * @param hits   命中数
+     * @param misses 未命中数
+     */
+    private void recordStatistics(int hits, int misses) {
+        for (int i = 0; i < hits + misses; i++) {
+            statistics.incGets(getName());
+            if (i < hits) {
+                statistics.incHits(getName());
+            } else {
+                statistics.incMisses(getName());
+            }
+        }
+    }
+
+    /**
+     * 查询redis中的剩余时间
+     *
+     * @param cacheKey 序列化后的缓存key
+     * @return 剩余时间，毫秒
+     */
+    private long getRemainingMillis(byte[] cacheKey) {
+        long start = System.nanoTime();
+        Long ttl = redisOperations.execute((RedisCallback<Long>) connection -> connection.keyCommands().pTtl(cacheKey));
+        metrics.recordTtlCheck(System.nanoTime() - start);
+        return ttl == null ? -1 : ttl;
+    }
+
+    /**
+     * 使用信封时在序列化后的值前加上写入时间和有效时间
+     *
+     * @param value 值
+     * @return 序列化后的值
+     */
+    @Override
+    protected byte[] serializeCacheValue(Object value) {
+        return serializeCacheValue(value, CustomizedRedisCacheManager.getTtl(config));
+    }
+
+    /**
+     * 信封中记录本次写入实际使用的有效时间，有效时间有抖动时与redis中的过期时间一致
+     *
+     * @param value 值
+     * @param ttl   本次写入的有效时间
+     * @return 序列化后的值
+     */
+    private byte[] serializeCacheValue(Object value, Duration ttl) {
+        byte[] bytes = super.serializeCacheValue(value);
+        return envelope ? CacheValueEnvelope.wrap(bytes, System.currentTimeMillis(), ttl == null ? 0 : ttl.toMillis()) : bytes;
+    }
+
+    @Override
+    protected Object deserializeCacheValue(byte[] value) {
+        return super.deserializeCacheValue(readEnvelope && CacheValueEnvelope.isEnvelope(value) ? CacheValueEnvelope.unwrap(value) : value);
+    }
+
+    /**
+     * 开启了本地缓存时，从redis读取到的值放入本地缓存
+     *
+     * @param key 名称
+     * @return 缓存值
+     */
+    @Override
+    protected Object lookup(Object key) {
+        if (localCache == null) {
+            return super.lookup(key);
+        }
+        String cacheKeyStr = getCacheKey(key);
+        Object value = localCache.get(cacheKeyStr);
+        if (value != null) {
+            return value;
+        }
+        byte[] bytes = getCacheWriter().get(getName(), serializeCacheKey(cacheKeyStr));
+        if (bytes == null) {
+            return null;
+        }
+        value = deserializeCacheValue(bytes);
+        localCache.put(cacheKeyStr, value, bytes.length);
+        return value;
+    }
+
+    /**
+     * 重写sync=true时的加载方法，加载后的值同样经过put写入，保证本地缓存失效和方法信息注册
+     *
+     * @param key         名称
+     * @param valueLoader 加载方法
+     * @param <T>         类型
+     * @return 结果
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        long start = System.nanoTime();
+        String cacheKeyStr = getCacheKey(key);
+        ValueWrapper result = getValue(key, cacheKeyStr);
+        metrics.recordGet(result != null, System.nanoTime() - start);
+        if (result != null) {
+            return (T) result.get();
+        }
+        return singleFlight != null ? getSingleFlight(key, cacheKeyStr, valueLoader) : getSynchronized(key, cacheKeyStr, valueLoader);
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T> T getSynchronized(Object key, String cacheKeyStr, Callable<T> valueLoader) {
+        ValueWrapper result = getValue(key, cacheKeyStr);
+        if (result != null) {
+            return (T) result.get();
+        }
+        return loadAndPut(key, valueLoader);
+    }
+
+    /**
+     * 跨节点单飞加载，本节点的其他线程同样通过锁释放通知等待，不再需要synchronized
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T getSingleFlight(Object key, String cacheKeyStr, Callable<T> valueLoader) {
+        RedisLock lock = singleFlight.tryLock(cacheKeyStr);
+        if (lock == null) {
+            ValueWrapper result = singleFlight.await(cacheKeyStr, () -> getValue(key, cacheKeyStr));
+            return result != null ? (T) result.get() : loadAndPut(key, valueLoader);
+        }
+        try {
+            return loadAndPut(key, valueLoader);
+        } finally {
+            singleFlight.release(lock, cacheKeyStr);
+        }
+    }
+
+    private <T> T loadAndPut(Object key, Callable<T> valueLoader) {
+        T value = loadCacheValue(key, valueLoader);
+        put(key, value);
+        return value;
+    }
+
+    /**
+     * 写入缓存，当前线程是@Cacheable方法未命中后的写入时注册方法信息，用于之后的自动刷新
+     * 有效时间只取一次，写入redis、信封和定时刷新使用同一个值
+     *
+     * @param key   名称
+     * @param value 值
+     */
+    @Override
+    public void put(Object key, Object value) {
+        long start = System.nanoTime();
+        Object cacheValue = preProcessCacheValue(value);
+        if (cacheValue == null) {
+            throw new IllegalArgumentException(String.format("Cache '%s' does not allow 'null' values", getName()));
+        }
+        String cacheKeyStr = getCacheKey(key);
+        Duration ttl = config.getTtlFunction().getTimeToLive(key, value);
+        getCacheWriter().put(getName(), serializeCacheKey(cacheKeyStr), serializeCacheValue(cacheValue, ttl), ttl);
+        metrics.recordPut(System.nanoTime() - start);
+        evictLocal(key);
+        // 非sync的异步方法在结果完成的线程中写入，当前线程没有调用信息，使用retrieve时保存的
+        CacheInvocationContext context = CacheInvocationContext.current();
+        CacheInvocationContext pending = pendingInvocations.asMap().remove(cacheKeyStr);
+        registerInvocation(key, context != null && context.hasCache(getName()) ? context : pending, ttl);
+        if (singleFlight != null && context != null) {
+            context.releaseLoadLock(cacheKeyStr);
+        }
+    }
+
+    /**
+     * 按redis中的缓存key写入缓存，用于自动刷新时方法信息中没有原始key的情况
+     *
+     * @param cacheKeyStr redis中的缓存key
+     * @param value       值
+     */
+    public void putCacheKey(String cacheKeyStr, Object value) {
+        Object cacheValue = preProcessCacheValue(value);
+        if (cacheValue == null) {
+            throw new IllegalArgumentException(String.format("Cache '%s' does not allow 'null' values", getName()));
+        }
+        Duration ttl = config.getTtlFunction().getTimeToLive(cacheKeyStr, value);
+        getCacheWriter().put(getName(), serializeCacheKey(cacheKeyStr), serializeCacheValue(cacheValue, ttl), ttl);
+        if (localCache != null) {
+            localCache.evict(cacheKeyStr);
+        }
+        scheduleRefresh(cacheKeyStr, ttl);
+    }
+
+    private void registerInvocation(Object key, CacheInvocationContext context, Duration ttl) {
+        if (context == null || !context.hasCache(getName())) {
+            return;
+        }
+        recordLoadTime(System.nanoTime() - context.getStartNanos());
+        try {
+            getCacheSupport().registerInvocation(context.getTargetBean(), context.getTargetMethod(),
+                    context.getParameterTypes(), context.getArguments(), this, key);
+            String cacheKeyStr = getCacheKey(key);
+            scheduleRefresh(cacheKeyStr, ttl);
+            // 未命中后加载写入，本身就是一次读取
+            touchScheduled(cacheKeyStr);
+        } catch (Exception e) {
+            log.info("注册缓存方法信息失败：" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 定时刷新的缓存写入后登记下一次的刷新时间：过期前preloadSecondTime秒
+     *
+     * @param cacheKeyStr redis中的缓存key
+     * @param ttl         本次写入的有效时间
+     */
+    private void scheduleRefresh(String cacheKeyStr, Duration ttl) {
+        if (scheduler == null || ttl == null || ttl.isZero() || ttl.isNegative()) {
+            return;
+        }
+        long refreshAt = System.currentTimeMillis() + ttl.toMillis() - TimeUnit.SECONDS.toMillis(preloadSecondTime);
+        scheduler.schedule(getName(), cacheKeyStr, refreshAt);
+    }
+
+    /**
+     * 定时刷新的缓存记录读取，上一次刷新后没有读取过的key不再刷新；只在本地记录，不访问redis
+     *
+     * @param cacheKeyStr redis中的缓存key
+     */
+    private void touchScheduled(String cacheKeyStr) {
+        if (scheduler != null) {
+            scheduler.touch(getName(), cacheKeyStr);
+        }
+    }
+
+    /**
+     * 刷新定时任务领取到的key，每个key单独提交到刷新执行器，领取时已经保证只有一个节点刷新，不再获取刷新锁
+     *
+     * @param cacheKeys redis中的缓存key
+     * @param lease     租约到期时间
+     * @return 是否全部提交，执行器已满时立即释放没有提交的key，下一轮重新领取
+     */
+    public boolean refreshScheduled(List<String> cacheKeys, long lease) {
+        for (int i = 0; i < cacheKeys.size(); i++) {
+            String cacheKeyStr = cacheKeys.get(i);
+            if (!refreshingKeys.add(cacheKeyStr)) {
+                continue;
+            }
+            boolean submitted = refreshExecutor.submit(getName(), () -> {
+                try {
+                    log.info("scheduled refresh key:{}", cacheKeyStr);
+                    getCacheSupport().refreshCacheByKey(getName(), cacheKeyStr);
+                    metrics.recordRefresh(RefreshOutcome.EXECUTED, 1);
+                } catch (Exception e) {
+                    metrics.recordRefresh(RefreshOutcome.FAILED, 1);
+                    log.info(e.getMessage(), e);
+                } finally {
+                    refreshingKeys.remove(cacheKeyStr);
+                    scheduler.complete(getName(), cacheKeyStr, lease);
+                }
+            });
+            if (!submitted) {
+                metrics.recordRefresh(RefreshOutcome.SKIPPED, cacheKeys.size() - i);
+                refreshingKeys.remove(cacheKeyStr);
+                scheduler.release(getName(), cacheKeys.subList(i, cacheKeys.size()));
+                return false;
+            }
+            metrics.recordRefresh(RefreshOutcome.TRIGGERED, 1);
+        }
+        return true;
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        Object cacheValue = preProcessCacheValue(value);
+        if (cacheValue == null) {
+            return get(key);
+        }
+        Duration ttl = config.getTtlFunction().getTimeToLive(key, value);
+        byte[] result = getCacheWriter().putIfAbsent(getName(), serializeCacheKey(getCacheKey(key)), serializeCacheValue(cacheValue, ttl), ttl);
+        evictLocal(key);
+        return result == null ? null : toValueWrapper(deserializeCacheValue(result));
+    }
+
+    @Override
+    public void evict(Object key) {
+        super.evict(key);
+        evictLocal(key);
+        if (scheduler != null) {
+            scheduler.cancel(getName(), getCacheKey(key));
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        if (localCache != null) {
+            localCache.clear();
+        }
+        if (scheduler != null) {
+            scheduler.clear(getName());
+        }
+    }
+
+    @Override
+    public void clear(String keyPattern) {
+        super.clear(keyPattern);
+        if (localCache != null) {
+            localCache.clear();
+        }
+        // 方法信息随缓存一起删除，定时刷新领取到已删除的key时不会写入，随后从有序集合中删除
+    }
+
+    /**
+     * 失效所有节点上的本地缓存
+     *
+     * @param key 名称
+     */
+    private void evictLocal(Object key) {
+        if (localCache != null) {
+            localCache.evict(getCacheKey(key));
+        }
+    }
+
+    /**
+     * 记录一次加载耗时，未命中时的方法执行和自动刷新都会记录
+     *
+     * @param nanos 耗时，纳秒
+     */
+    public void recordLoadTime(long nanos) {
+        metrics.recordLoad(nanos);
+        long current = loadNanos;
+        loadNanos = current == 0 ? nanos : current + (nanos - current) / 4;
+    }
+
+    /**
+     * 是否需要刷新
+     * 固定窗口：剩余时间进入刷新窗口即刷新
+     * XFetch：在刷新窗口内按 -加载耗时 * beta * ln(random) >= 剩余时间 的概率刷新，
+     * 越接近过期、加载越慢，刷新概率越大，热点key的刷新被分散，不会每次命中都去抢锁
+     *
+     * @param ttl 剩余时间，毫秒
+     * @return 是否需要刷新
+     */
+    boolean shouldRefresh(long ttl) {
+        long preloadMillis = TimeUnit.SECONDS.toMillis(preloadSecondTime);
+        if (ttl < 0 || ttl > preloadMillis) {
+            return false;
+        }
+        if (xfetchBeta <= 0) {
+            return true;
+        }
+        // 本节点还没有观测到加载耗时时，以刷新窗口作为加载耗时
+        double delta = loadNanos > 0 ? loadNanos / 1_000_000.0 : preloadMillis;
+        return -delta * xfetchBeta * Math.log(ThreadLocalRandom.current().nextDouble()) >= ttl;
+    }
+
+    /**
+     * 需要刷新时，后台刷新缓存
+     *
+     * @param key         名称
+     * @param cacheKeyStr redis中的缓存key
+     * @param ttl         读取缓存时一并取回的剩余时间，毫秒
+     */
+    private void refreshCache(Object key, String cacheKeyStr, long ttl) {
         //刷新缓存数据
-        Long ttl = this.redisOperations.getExpire(cacheKeyStr);
-        if (null != ttl && ttl <= CustomizedRedisCache.this.preloadSecondTime) {
-            // 尽量少的去开启线程，因为线程池是有限的
-            ThreadTaskUtils.run(() -> {
+        if (shouldRefresh(ttl) && refreshingKeys.add(cacheKeyStr)) {
+            // 执行器已满时直接丢弃，不影响本次读取
+            boolean submitted = refreshExecutor.submit(getName(), () -> {
                 // 加一个分布式锁，只放一个请求去刷新缓存
-                RedisLock redisLock = new RedisLock(redisOperations, cacheKeyStr + "_lock");
+                RedisLock redisLock = newRefreshLock(cacheKeyStr);
                 try {
+                    // lock只尝试一次，拿到锁说明没有其他节点在刷新，读取时一并取回的剩余时间(信封或GET_WITH_TTL)仍然有效，
+                    // 不再单独查询一次过期时间；锁被占用时跳过，由持有锁的节点刷新
                     if (redisLock.lock()) {
-                        // 获取锁之后再判断一下过期时间，看是否需要加载数据
-                        Long ttl1 = CustomizedRedisCache.this.redisOperations.getExpire(cacheKeyStr);
-                        if (null != ttl1 && ttl1 <= CustomizedRedisCache.this.preloadSecondTime) {
-                            // 通过获取代理方法信息重新加载缓存数据
-                            log.info("refresh key:{}", key);
-                            CustomizedRedisCache.this.getCacheSupport().refreshCacheByKey(CustomizedRedisCache.super.getName(), cacheKeyStr);
-                        }
+                        // 通过获取代理方法信息重新加载缓存数据
+                        log.info("refresh key:{}", key);
+                        CustomizedRedisCache.this.getCacheSupport().refreshCacheByKey(CustomizedRedisCache.super.getName(), cacheKeyStr);
+                        metrics.recordRefresh(RefreshOutcome.EXECUTED, 1);
+                        return;
                     }
+                    metrics.recordRefresh(RefreshOutcome.SKIPPED, 1);
                 } catch (Exception e) {
+                    metrics.recordRefresh(RefreshOutcome.FAILED, 1);
                     log.info(e.getMessage(), e);
                 } finally {
                     redisLock.unlock();
+                    refreshingKeys.remove(cacheKeyStr);
                 }
             });
+            if (submitted) {
+                metrics.recordRefresh(RefreshOutcome.TRIGGERED, 1);
+            } else {
+                metrics.recordRefresh(RefreshOutcome.SKIPPED, 1);
+                refreshingKeys.remove(cacheKeyStr);
+            }
         }
     }
 
+    /**
+     * 刷新锁，有工厂时等待释放通知、持有期间续期
+     *
+     * @param cacheKeyStr redis中的缓存key
+     * @return 锁
+     */
+    private RedisLock newRefreshLock(String cacheKeyStr) {
+        return lockFactory == null ? new RedisLock(redisOperations, cacheKeyStr + RedisLock.LOCK_SUFFIX)
+                : lockFactory.create(cacheKeyStr + RedisLock.LOCK_SUFFIX, RedisLock.EXPIRE);
+    }
+
+    /**
+     * 有效时间有抖动时返回最长的有效时间，方法信息不会早于缓存过期
+     *
+     * @return 有效时间，秒
+     */
     public long getExpirationSecondTime() {
-        return config.getTtl().getSeconds();
+        if (config.getTtlFunction() instanceof JitterTtlFunction jitter) {
+            return jitter.getMaxTtl().getSeconds();
+        }
+        return CustomizedRedisCacheManager.getTtl(config).getSeconds();
     }
 
     public String getCacheKey(Object key) {
@@ -1,25 +1,36 @@
 package com.smarthito.cache.cache;
 
-import com.smarthito.cache.utils.ReflectionUtils;
-import com.smarthito.cache.utils.SpringContextUtils;
+import com.smarthito.cache.init.SpringCacheRedisPlusProperties;
+import com.smarthito.cache.local.LocalCache;
+import com.smarthito.cache.local.LocalCacheSynchronizer;
+import com.smarthito.cache.lock.RedisLockFactory;
+import com.smarthito.cache.metrics.CacheMetricsFactory;
+import com.smarthito.cache.refresh.CacheRefreshExecutor;
+import com.smarthito.cache.refresh.RefreshScheduler;
+import com.smarthito.cache.serializer.CacheValueSerializer;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCache;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 import java.time.Duration;
-import java.util.Objects;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 自定义的redis缓存管理器
  * 支持方法上配置过期时间
  * 支持热加载缓存：缓存即将过期时主动刷新缓存
+ * 缓存通过父类的createRedisCache、getMissingCache扩展点创建，运行时创建的缓存也保存在父类中，getCacheNames、指标绑定都可以看到
  *
  * @author yaojunguang
  */
@@ -27,58 +38,178 @@ import java.util.concurrent.ConcurrentHashMap;
 public class CustomizedRedisCacheManager extends RedisCacheManager {
 
     /**
-     * 父类cacheMap字段
+     * 缓存参数的分隔符
+     * 数组元素0=缓存的名称
+     * 数组元素1=缓存过期时间TTL
+     * 数组元素2=缓存在多少秒开始主动失效来强制刷新
+     * 数组元素3及之后=配置项，格式为 名称 或 名称=值
      */
-    private static final String SUPER_FIELD_CACHE_MAP = "cacheMap";
+    private static final String SEPARATOR = "#";
 
     /**
-     * 父类allowInFlightCacheCreation字段
+     * 配置项名称和值的分隔符
      */
-    private static final String SUPER_FIELD_ALLOW_IN_FLIGHT_CACHE_CREATION = "allowRuntimeCacheCreation";
+    private static final String OPTION_SEPARATOR = "=";
 
     /**
-     * 父类updateCacheNames方法
+     * 配置项：开启本地一级缓存，值为最大条目数(可选)
      */
-    private static final String SUPER_METHOD_UPDATE_CACHE_NAMES = "updateCacheNames";
+    public static final String OPTION_LOCAL = "local";
 
     /**
-     * 缓存参数的分隔符
-     * 数组元素0=缓存的名称
-     * 数组元素1=缓存过期时间TTL
-     * 数组元素2=缓存在多少秒开始主动失效来强制刷新
+     * 配置项：缓存值使用信封保存写入时间和有效时间，命中时不再查询剩余时间
      */
-    private static final String SEPARATOR = "#";
+    public static final String OPTION_ENVELOPE = "envelope";
+
+    /**
+     * 配置项：在刷新窗口内按概率提前刷新(XFetch)，值为系数beta(可选，默认1)
+     */
+    public static final String OPTION_XFETCH = "xfetch";
+
+    /**
+     * 配置项：未命中时跨节点只有一个调用方执行方法，值为最长等待时间(毫秒，可选)
+     */
+    public static final String OPTION_SINGLE_FLIGHT = "single-flight";
+
+    /**
+     * 配置项：缓存值格式，json(默认)、smile，或者RedisSerializer的bean名称
+     */
+    public static final String OPTION_CODEC = "codec";
+
+    private static final String CODEC_JSON = "json";
+
+    private static final String CODEC_SMILE = "smile";
+
+    /**
+     * 配置项：超过阈值的缓存值压缩后写入，值为阈值(字节，可选)
+     */
+    public static final String OPTION_COMPRESS = "compress";
+
+    /**
+     * 配置项：按到期时间定时刷新，不再在读取时判断，需要配置自动刷新时间
+     */
+    public static final String OPTION_SCHEDULED = "scheduled";
+
+    /**
+     * 配置项：有效时间的随机抖动，N%为±N%，N为随机增加0~N秒
+     */
+    public static final String OPTION_JITTER = "jitter";
 
     /**
      * SpEL标示符
      */
     private static final String MARK = "$";
 
-    RedisCacheManager redisCacheManager = null;
+    /**
+     * 缓存创建时使用的参数(过期时间#刷新时间#配置项)，缓存名称到参数，同名缓存的参数不一致时告警
+     */
+    private final ConcurrentHashMap<String, String> createdSpecs = new ConcurrentHashMap<>(16);
+
+    /**
+     * 运行时创建缓存的锁，同一个缓存只创建一次
+     */
+    private final Object creationMonitor = new Object();
+
+    /**
+     * 正在创建的缓存的参数，缓存名称到缓存参数，父类调用getMissingCache时使用；持有creationMonitor时读写
+     */
+    private final Map<String, String[]> creatingParams = new HashMap<>(4);
+
+    /**
+     * 完整的缓存参数(名称#过期时间#刷新时间#配置项)到缓存的映射，每种写法只解析一次
+     */
+    private final ConcurrentHashMap<String, Cache> specCaches = new ConcurrentHashMap<>(16);
 
     private final RedisCacheWriter cacheWriter;
     private final RedisCacheConfiguration config;
     private final RedisTemplate<String, Object> redisOperations;
 
+    /**
+     * 默认的缓存值序列化器，为null时不支持codec配置项
+     */
+    private final CacheValueSerializer valueSerializer;
+
+    /**
+     * 与cacheWriter共用的缓存统计，缓存中绕过cacheWriter的读写也计入
+     */
+    private final CacheStatisticsCollector statistics;
+
     @Resource
     private DefaultListableBeanFactory beanFactory;
+    @Resource
+    private SpringCacheRedisPlusProperties properties;
+    @Resource
+    private LocalCacheSynchronizer localCacheSynchronizer;
+    @Resource
+    private CacheRefreshExecutor cacheRefreshExecutor;
+    @Resource
+    private RedisLockFactory redisLockFactory;
+    @Resource
+    private CacheMetricsFactory cacheMetricsFactory;
+    @Resource
+    private RefreshScheduler refreshScheduler;
 
     public CustomizedRedisCacheManager(RedisCacheWriter cacheWriter, RedisCacheConfiguration config, RedisTemplate<String, Object> redisOperations) {
-        super(cacheWriter, config);
+        this(cacheWriter, config, redisOperations, null);
+    }
+
+    public CustomizedRedisCacheManager(RedisCacheWriter cacheWriter, RedisCacheConfiguration config, RedisTemplate<String, Object> redisOperations,
+                                       CacheValueSerializer valueSerializer) {
+        this(cacheWriter, config, redisOperations, valueSerializer, CacheStatisticsCollector.none());
+    }
+
+    /**
+     * @param cacheWriter     cacheWriter，开启统计时需要使用同一个statistics
+     * @param config          默认缓存配置
+     * @param redisOperations redisTemplate
+     * @param valueSerializer 默认的缓存值序列化器
+     * @param statistics      缓存统计
+     */
+    public CustomizedRedisCacheManager(RedisCacheWriter cacheWriter, RedisCacheConfiguration config, RedisTemplate<String, Object> redisOperations,
+                                       CacheValueSerializer valueSerializer, CacheStatisticsCollector statistics) {
+        this(cacheWriter, config, true, Collections.emptyMap(), redisOperations, valueSerializer, statistics);
+    }
+
+    /**
+     * @param cacheWriter                cacheWriter，开启统计时需要使用同一个statistics
+     * @param config                     默认缓存配置
+     * @param allowRuntimeCacheCreation  是否允许运行时按缓存参数创建缓存，不允许时只能使用启动时初始化的缓存
+     * @param initialCacheConfigurations 启动时初始化的缓存，通过createRedisCache创建
+     * @param redisOperations            redisTemplate
+     * @param valueSerializer            默认的缓存值序列化器
+     * @param statistics                 缓存统计
+     */
+    public CustomizedRedisCacheManager(RedisCacheWriter cacheWriter, RedisCacheConfiguration config, boolean allowRuntimeCacheCreation,
+                                       Map<String, RedisCacheConfiguration> initialCacheConfigurations, RedisTemplate<String, Object> redisOperations,
+                                       CacheValueSerializer valueSerializer, CacheStatisticsCollector statistics) {
+        super(cacheWriter, config, allowRuntimeCacheCreation, initialCacheConfigurations);
         this.cacheWriter = cacheWriter;
         this.config = config;
         this.redisOperations = redisOperations;
+        this.valueSerializer = valueSerializer;
+        this.statistics = statistics;
     }
 
-    public RedisCacheManager getInstance() {
-        if (redisCacheManager == null) {
-            redisCacheManager = SpringContextUtils.getBean(RedisCacheManager.class);
+    @Override
+    public Cache getCache(String name) {
+        Cache cache = specCaches.get(name);
+        if (cache != null) {
+            return cache;
         }
-        return redisCacheManager;
+        cache = resolveCache(name);
+        if (cache != null) {
+            specCaches.putIfAbsent(name, cache);
+        }
+        return cache;
     }
 
-    @Override
-    public Cache getCache(String name) {
+    /**
+     * 解析缓存参数并获取或创建缓存
+     *
+     * @param name 缓存参数
+     * @return 缓存
+     */
+    private Cache resolveCache(String name) {
         String[] cacheParams = name.split(SEPARATOR);
         String cacheName = cacheParams[0];
 
@@ -90,17 +221,68 @@ public class CustomizedRedisCacheManager extends RedisCacheManager {
         long expirationSecondTime = getExpirationSecondTime(cacheParams);
         // 自动刷新时间，默认是0
         long preloadSecondTime = getPreloadSecondTime(cacheParams);
+        // 其他配置项
+        Map<String, String> options = getOptions(cacheName, cacheParams);
 
-        // 通过反射获取父类存放缓存的容器对象
-        Object object = ReflectionUtils.getFieldValue(getInstance(), SUPER_FIELD_CACHE_MAP);
-        if (object instanceof ConcurrentHashMap) {
-            ConcurrentHashMap<String, Cache> cacheMap = (ConcurrentHashMap<String, Cache>) object;
-            // 生成Cache对象，并将其保存到父类的Cache容器中
-            return getCache(cacheName, expirationSecondTime, preloadSecondTime, cacheMap);
-        } else {
-            return super.getCache(cacheName);
+        // 启动时初始化的缓存和运行时创建的缓存都在父类中
+        Cache cache = lookupCache(cacheName);
+        if (cache == null) {
+            if (!isAllowRuntimeCacheCreation()) {
+                return null;
+            }
+            synchronized (creationMonitor) {
+                cache = lookupCache(cacheName);
+                if (cache == null) {
+                    // 由父类调用getMissingCache创建并注册
+                    creatingParams.put(cacheName, cacheParams);
+                    try {
+                        return super.getCache(cacheName);
+                    } finally {
+                        creatingParams.remove(cacheName);
+                    }
+                }
+            }
         }
+        // 缓存已经按其他参数创建，本次的参数不会生效
+        String spec = getSpec(expirationSecondTime, preloadSecondTime, options);
+        String createdSpec = createdSpecs.get(cacheName);
+        if (cacheParams.length > 1 && createdSpec != null && !createdSpec.equals(spec)) {
+            log.warn("缓存{}已经按参数{}创建，忽略缓存参数{}", cacheName, createdSpec, name);
+        }
+        return cache;
+    }
+
+    /**
+     * 缓存参数的规范写法，用于比较同名缓存的参数是否一致
+     *
+     * @param expirationSecondTime 过期时间
+     * @param preloadSecondTime    自动刷新时间
+     * @param options              配置项
+     * @return 过期时间#刷新时间#配置项
+     */
+    private static String getSpec(long expirationSecondTime, long preloadSecondTime, Map<String, String> options) {
+        return expirationSecondTime + SEPARATOR + preloadSecondTime + SEPARATOR + new TreeMap<>(options);
+    }
+
+    /**
+     * 运行时按缓存参数创建缓存，没有缓存参数时使用默认的过期时间
+     */
+    @Override
+    protected RedisCache getMissingCache(String name) {
+        if (!isAllowRuntimeCacheCreation()) {
+            return null;
+        }
+        String[] cacheParams = creatingParams.getOrDefault(name, new String[]{name});
+        return getMissingCache(name, getExpirationSecondTime(cacheParams), getPreloadSecondTime(cacheParams), getOptions(name, cacheParams));
+    }
 
+    /**
+     * 启动时初始化的缓存也使用自定义的缓存，配置项只来自配置文件
+     */
+    @Override
+    protected RedisCache createRedisCache(String name, RedisCacheConfiguration cacheConfig) {
+        Map<String, String> options = getOptions(name, new String[]{name});
+        return createCache(name, cacheConfig, 0, options);
     }
 
     public long getExpirationSecondTime(String[] cacheParams) {
@@ -110,7 +292,7 @@ public class CustomizedRedisCacheManager extends RedisCacheManager {
         }
 
         // 有效时间，初始化获取默认的有效时间
-        long expirationSecondTime = config.getTtl().getSeconds();
+        long expirationSecondTime = getTtl(config).getSeconds();
 
         // 设置key有效时间
         if (cacheParams.length > 1) {
@@ -146,37 +328,40 @@ public class CustomizedRedisCacheManager extends RedisCacheManager {
     }
 
     /**
-     * 重写父类的getCache方法，增加了三个参数
+     * 解析配置项，缓存名称上的配置项优先于配置文件中的配置项
      *
-     * @param cacheName            缓存名称
-     * @param expirationSecondTime 过期时间
-     * @param preloadSecondTime    自动刷新时间
-     * @param cacheMap             通过反射获取的父类的cacheMap对象
-     * @return Cache
+     * @param cacheName   缓存名称
+     * @param cacheParams 缓存参数
+     * @return 配置项
      */
-    public Cache getCache(String cacheName, long expirationSecondTime, long preloadSecondTime, ConcurrentHashMap<String, Cache> cacheMap) {
-        Cache cache = cacheMap.get(cacheName);
-        if (cache != null) {
-            return cache;
-        } else {
-            //加入一个分布式锁发起的锁，避免对实例同步发起调用
-            synchronized (cacheMap) {
-                cache = cacheMap.get(cacheName);
-                if (cache == null) {
-                    // 调用我们自己的getMissingCache方法创建自己的cache
-                    cache = getMissingCache(cacheName, expirationSecondTime, preloadSecondTime);
-                    if (cache != null) {
-                        cache = decorateCache(cache);
-                        cacheMap.put(cacheName, cache);
-                        // 反射去执行父类的updateCacheNames(cacheName)方法
-                        Class<?>[] parameterTypes = {String.class};
-                        Object[] parameters = {cacheName};
-                        ReflectionUtils.invokeMethod(getInstance(), SUPER_METHOD_UPDATE_CACHE_NAMES, parameterTypes, parameters);
-                    }
-                }
-                return cache;
+    private Map<String, String> getOptions(String cacheName, String[] cacheParams) {
+        Map<String, String> options = new HashMap<>(4);
+        String configured = properties == null ? null : properties.getCaches().get(cacheName);
+        if (StringUtils.isNotBlank(configured)) {
+            for (String option : configured.split(SEPARATOR)) {
+                putOption(options, option);
             }
         }
+        for (int i = 3; i < cacheParams.length; i++) {
+            putOption(options, cacheParams[i]);
+        }
+        return options;
+    }
+
+    private void putOption(Map<String, String> options, String option) {
+        if (StringUtils.isBlank(option)) {
+            return;
+        }
+        // 支持配置项使用EL表达式读取配置文件
+        if (option.contains(MARK)) {
+            option = beanFactory.resolveEmbeddedValue(option);
+        }
+        int index = Objects.requireNonNull(option).indexOf(OPTION_SEPARATOR);
+        if (index < 0) {
+            options.put(option.trim(), "");
+        } else {
+            options.put(option.substring(0, index).trim(), option.substring(index + 1).trim());
+        }
     }
 
     /**
@@ -185,13 +370,133 @@ public class CustomizedRedisCacheManager extends RedisCacheManager {
      * @param cacheName            缓存名称
      * @param expirationSecondTime 过期时间
      * @param preloadSecondTime    制动刷新时间
-     * @return aa
-     */
-    public CustomizedRedisCache getMissingCache(String cacheName, long expirationSecondTime, long preloadSecondTime) {
-        log.info("缓存 cacheName：{}，过期时间:{}, 自动刷新时间:{}", cacheName, expirationSecondTime, preloadSecondTime);
-        Boolean allowInFlightCacheCreation = (Boolean) ReflectionUtils.getFieldValue(getInstance(), SUPER_FIELD_ALLOW_IN_FLIGHT_CACHE_CREATION);
-        return Boolean.TRUE.equals(allowInFlightCacheCreation) ?
-                new CustomizedRedisCache(cacheName, cacheWriter, config.entryTtl(Duration.ofSeconds(expirationSecondTime)), redisOperations, preloadSecondTime)
-                : null;
+     * @param options              其他配置项
+     * @return 缓存
+     */
+    public CustomizedRedisCache getMissingCache(String cacheName, long expirationSecondTime, long preloadSecondTime, Map<String, String> options) {
+        return createCache(cacheName, config.entryTtl(Duration.ofSeconds(expirationSecondTime)), preloadSecondTime, options);
+    }
+
+    private CustomizedRedisCache createCache(String cacheName, RedisCacheConfiguration cacheConfig, long preloadSecondTime, Map<String, String> options) {
+        log.info("缓存 cacheName：{}，过期时间:{}, 自动刷新时间:{}, 配置项:{}", cacheName, getTtl(cacheConfig).getSeconds(), preloadSecondTime, options);
+        createdSpecs.put(cacheName, getSpec(getTtl(cacheConfig).getSeconds(), preloadSecondTime, options));
+        RefreshScheduler scheduler = preloadSecondTime > 0 && options.containsKey(OPTION_SCHEDULED) ? refreshScheduler : null;
+        CustomizedRedisCache cache = new CustomizedRedisCache(cacheName, cacheWriter,
+                getCacheConfig(getTtlConfig(cacheConfig, options, preloadSecondTime), options), redisOperations,
+                preloadSecondTime, getLocalCache(cacheName, options), options.containsKey(OPTION_ENVELOPE),
+                properties != null && properties.isReadEnvelope(), getXfetchBeta(options),
+                cacheRefreshExecutor, getSingleFlight(options), redisLockFactory,
+                cacheMetricsFactory == null ? null : cacheMetricsFactory.forCache(cacheName), scheduler, statistics);
+        if (scheduler != null) {
+            scheduler.register(cacheName, cache.getExpirationSecondTime() - preloadSecondTime, cache::refreshScheduled);
+        }
+        return cache;
+    }
+
+    /**
+     * 按codec、compress配置项选择缓存值的序列化器
+     *
+     * @param config  缓存配置
+     * @param options 配置项
+     * @return 缓存配置
+     */
+    @SuppressWarnings("unchecked")
+    private RedisCacheConfiguration getCacheConfig(RedisCacheConfiguration config, Map<String, String> options) {
+        String codec = options.get(OPTION_CODEC);
+        String compress = options.get(OPTION_COMPRESS);
+        boolean json = StringUtils.isBlank(codec) || CODEC_JSON.equals(codec);
+        if (json && compress == null) {
+            return config;
+        }
+        RedisSerializer<Object> custom = json || CODEC_SMILE.equals(codec) ? null : beanFactory.getBean(codec, RedisSerializer.class);
+        RedisSerializer<Object> serializer;
+        if (valueSerializer == null) {
+            if (custom == null) {
+                log.warn("未配置缓存值序列化器，忽略配置项：{}", options);
+                return config;
+            }
+            serializer = custom;
+        } else {
+            CacheValueSerializer cacheValueSerializer = json ? valueSerializer
+                    : custom == null ? valueSerializer.withWriter(valueSerializer.getSmileSerializer()) : valueSerializer.withSerializer(custom);
+            serializer = compress == null ? cacheValueSerializer
+                    : cacheValueSerializer.withCompression(StringUtils.isBlank(compress) ? properties.getCompression().getThreshold() : Integer.parseInt(compress));
+        }
+        return config.serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(serializer));
+    }
+
+    /**
+     * 按jitter配置项给有效时间加上随机抖动，没有配置时使用全局的ttl-jitter
+     *
+     * @param config            缓存配置
+     * @param options           配置项
+     * @param preloadSecondTime 自动刷新时间
+     * @return 缓存配置
+     */
+    private RedisCacheConfiguration getTtlConfig(RedisCacheConfiguration config, Map<String, String> options, long preloadSecondTime) {
+        String jitter = options.containsKey(OPTION_JITTER) ? options.get(OPTION_JITTER) : properties == null ? null : properties.getTtlJitter();
+        if (StringUtils.isBlank(jitter)) {
+            return config;
+        }
+        JitterTtlFunction ttlFunction = JitterTtlFunction.parse(getTtl(config), jitter, preloadSecondTime);
+        return ttlFunction == null ? config : config.entryTtl(ttlFunction);
+    }
+
+    /**
+     * 获取XFetch的系数
+     *
+     * @param options 配置项
+     * @return 系数，未开启时返回0
+     */
+    private double getXfetchBeta(Map<String, String> options) {
+        String xfetch = options.get(OPTION_XFETCH);
+        if (xfetch == null) {
+            return 0;
+        }
+        double beta = StringUtils.isBlank(xfetch) ? 1.0 : Double.parseDouble(xfetch);
+        return beta < 0 ? 0 : beta;
+    }
+
+    /**
+     * 创建单飞加载
+     *
+     * @param options 配置项
+     * @return 未开启时返回null
+     */
+    private SingleFlightLoader getSingleFlight(Map<String, String> options) {
+        String singleFlight = options.get(OPTION_SINGLE_FLIGHT);
+        if (singleFlight == null || redisLockFactory == null) {
+            return null;
+        }
+        SpringCacheRedisPlusProperties.SingleFlight singleFlightProperties = properties.getSingleFlight();
+        long waitMillis = StringUtils.isBlank(singleFlight) ? singleFlightProperties.getWaitMillis() : Long.parseLong(singleFlight);
+        return new SingleFlightLoader(redisLockFactory, waitMillis, singleFlightProperties.getLeaseSeconds());
+    }
+
+    /**
+     * 缓存配置的有效时间，代替已废弃的RedisCacheConfiguration.getTtl()
+     * 固定有效时间的TtlFunction与key、值无关
+     *
+     * @param config 缓存配置
+     * @return 有效时间
+     */
+    static Duration getTtl(RedisCacheConfiguration config) {
+        return config.getTtlFunction().getTimeToLive(Object.class, null);
+    }
+
+    /**
+     * 创建本地一级缓存
+     *
+     * @param cacheName 缓存名称
+     * @param options   配置项
+     * @return 未开启时返回null
+     */
+    private LocalCache getLocalCache(String cacheName, Map<String, String> options) {
+        String local = options.get(OPTION_LOCAL);
+        if (local == null || localCacheSynchronizer == null) {
+            return null;
+        }
+        long maximumSize = StringUtils.isBlank(local) ? 0 : Long.parseLong(local);
+        return localCacheSynchronizer.createCache(cacheName, maximumSize);
     }
 }
@@ -0,0 +1,71 @@
+package com.smarthito.cache.cache;
+
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带随机抖动的有效时间，每次写入单独取值，避免同时写入的缓存同时过期、同时重新加载
+ * N% 表示在有效时间的 ±N% 内取值，N 表示在有效时间之后再随机增加 0~N 秒
+ *
+ * @author yaojunguang
+ */
+public final class JitterTtlFunction implements RedisCacheWriter.TtlFunction {
+
+    private static final String PERCENT = "%";
+
+    private final long minMillis;
+
+    private final long maxMillis;
+
+    private JitterTtlFunction(long minMillis, long maxMillis) {
+        this.minMillis = minMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * 解析抖动配置
+     *
+     * @param ttl               有效时间
+     * @param jitter            N% 或者 N(秒)
+     * @param preloadSecondTime 自动刷新时间，抖动后的有效时间不小于刷新时间，避免写入后立即进入刷新窗口
+     * @return 不需要抖动(永不过期或者抖动为0)时返回null
+     */
+    public static JitterTtlFunction parse(Duration ttl, String jitter, long preloadSecondTime) {
+        if (ttl == null || ttl.isZero() || ttl.isNegative()) {
+            return null;
+        }
+        long ttlMillis = ttl.toMillis();
+        long minMillis = ttlMillis;
+        long maxMillis = ttlMillis;
+        String value = jitter.trim();
+        if (value.endsWith(PERCENT)) {
+            double percent = Double.parseDouble(value.substring(0, value.length() - 1).trim());
+            long delta = (long) (ttlMillis * Math.min(Math.max(percent, 0), 100) / 100);
+            minMillis = ttlMillis - delta;
+            maxMillis = ttlMillis + delta;
+        } else {
+            maxMillis += TimeUnit.SECONDS.toMillis(Math.max(Long.parseLong(value), 0));
+        }
+        if (maxMillis == minMillis) {
+            return null;
+        }
+        // 不低于刷新窗口，有效时间本身小于刷新窗口时不再向下抖动
+        long floorMillis = Math.min(ttlMillis, TimeUnit.SECONDS.toMillis(preloadSecondTime + 1));
+        return new JitterTtlFunction(Math.max(minMillis, Math.max(floorMillis, 1)), maxMillis);
+    }
+
+    @Override
+    public Duration getTimeToLive(Object key, Object value) {
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1));
+    }
+
+    /**
+     * @return 最长的有效时间
+     */
+    public Duration getMaxTtl() {
+        return Duration.ofMillis(maxMillis);
+    }
+}
@@ -0,0 +1,109 @@
+package com.smarthito.cache.cache;
+
+import com.smarthito.cache.lock.LockNotifier;
+import com.smarthito.cache.lock.RedisLock;
+import com.smarthito.cache.lock.RedisLockFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 缓存未命中时的跨节点单飞加载
+ * 只有拿到加载锁的调用方执行方法，其他节点、线程等待锁释放通知后重新读取缓存；
+ * 超过等待时间或重新读取仍未命中时，直接执行方法
+ * <p>
+ * 加载锁的key为 缓存key + _load_lock，解锁时由解锁脚本发布释放通知；
+ * 持有期间由看门狗续期，持有者异常退出时由锁的有效时间兜底
+ *
+ * @author yaojunguang
+ */
+@Slf4j
+public class SingleFlightLoader {
+
+    private static final String LOAD_LOCK_SUFFIX = "_load";
+
+    private final RedisLockFactory lockFactory;
+
+    private final LockNotifier lockNotifier;
+
+    /**
+     * 等待其他调用方加载的最长时间，毫秒
+     */
+    private final long waitMillis;
+
+    /**
+     * 加载锁的有效时间，秒
+     */
+    private final int leaseSeconds;
+
+    public SingleFlightLoader(RedisLockFactory lockFactory, long waitMillis, int leaseSeconds) {
+        this.lockFactory = lockFactory;
+        this.lockNotifier = lockFactory.getLockNotifier();
+        this.waitMillis = waitMillis;
+        this.leaseSeconds = leaseSeconds;
+        lockNotifier.subscribe();
+    }
+
+    /**
+     * 尝试获取加载锁
+     *
+     * @param cacheKeyStr redis中的缓存key
+     * @return 获取成功返回锁，否则返回null
+     */
+    public RedisLock tryLock(String cacheKeyStr) {
+        RedisLock lock = lockFactory.create(cacheKeyStr + LOAD_LOCK_SUFFIX, leaseSeconds);
+        try {
+            return lock.lock() ? lock : null;
+        } catch (Exception e) {
+            log.info("获取加载锁失败：" + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 释放加载锁，解锁脚本同时通知等待的调用方
+     *
+     * @param lock        tryLock返回的锁
+     * @param cacheKeyStr redis中的缓存key
+     */
+    public void release(RedisLock lock, String cacheKeyStr) {
+        try {
+            lock.unlock();
+        } catch (Exception e) {
+            log.info("释放加载锁失败：" + e.getMessage(), e);
+            lockNotifier.publish(lock.getLockKey());
+        }
+    }
+
+    /**
+     * 等待其他调用方加载完成
+     *
+     * @param cacheKeyStr redis中的缓存key
+     * @param reader      读取缓存
+     * @param <T>         类型
+     * @return 等待后读取到的缓存，超时或仍未命中返回null
+     */
+    public <T> T await(String cacheKeyStr, Supplier<T> reader) {
+        String lockKey = cacheKeyStr + LOAD_LOCK_SUFFIX + RedisLock.LOCK_SUFFIX;
+        CountDownLatch latch = lockNotifier.register(lockKey);
+        try {
+            // 登记之后再读一次，避免在未命中和登记之间加载已经完成
+            T value = reader.get();
+            if (value != null) {
+                return value;
+            }
+            if (!latch.await(waitMillis, TimeUnit.MILLISECONDS)) {
+                log.debug("等待加载超时，直接加载 key:{}", cacheKeyStr);
+                return null;
+            }
+            return reader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            lockNotifier.unregister(lockKey, latch);
+        }
+    }
+}
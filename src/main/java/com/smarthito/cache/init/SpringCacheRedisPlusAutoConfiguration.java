@@ -1,18 +1,27 @@
 package com.smarthito.cache.init;
 
-import com.fasterxml.jackson.annotation.JsonAutoDetect;
-import com.fasterxml.jackson.annotation.JsonTypeInfo;
-import com.fasterxml.jackson.annotation.PropertyAccessor;
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
-import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.smarthito.cache.cache.BatchCachingAspect;
+import com.smarthito.cache.cache.CachedMethodRegistry;
 import com.smarthito.cache.cache.CachingAnnotationsAspect;
 import com.smarthito.cache.cache.CustomizedRedisCacheManager;
+import com.smarthito.cache.local.LocalCacheSynchronizer;
+import com.smarthito.cache.lock.LockNotifier;
+import com.smarthito.cache.lock.RedisLockFactory;
+import com.smarthito.cache.metrics.CacheMetricsFactory;
+import com.smarthito.cache.metrics.MicrometerCacheMetricsFactory;
+import com.smarthito.cache.refresh.CacheRefreshExecutor;
+import com.smarthito.cache.refresh.RefreshScheduler;
+import com.smarthito.cache.script.LuaScriptLoader;
+import com.smarthito.cache.serializer.CacheValueSerializer;
+import com.smarthito.cache.serializer.CompressionCodec;
+import com.smarthito.cache.serializer.SmileRedisSerializer;
 import com.smarthito.cache.serializer.StringRedisSerializer;
+import com.smarthito.cache.utils.ObjectMapperUtils;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.Resource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cache.interceptor.KeyGenerator;
@@ -20,15 +29,20 @@ import org.springframework.cache.interceptor.SimpleKeyGenerator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import springfox.bean.validators.configuration.BeanValidatorPluginsConfiguration;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 
 
@@ -49,6 +63,28 @@ public class SpringCacheRedisPlusAutoConfiguration {
         return new CachingAnnotationsAspect();
     }
 
+    /**
+     * 处理@BatchCacheable
+     *
+     * @return 切面
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public BatchCachingAspect batchCachingAspect() {
+        return new BatchCachingAspect();
+    }
+
+    /**
+     * 缓存方法注册表，启动时扫描@Cacheable方法
+     *
+     * @return 注册表
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public CachedMethodRegistry cachedMethodRegistry() {
+        return new CachedMethodRegistry();
+    }
+
     /**
      * 显示声明缓存key生成器
      *
@@ -88,22 +124,130 @@ public class SpringCacheRedisPlusAutoConfiguration {
         return redisTemplate;
     }
 
+    /**
+     * 本组件专用的redis消息监听容器，没有监听器时不会建立订阅连接
+     * 不参与按类型注入，避免和应用自己的监听容器冲突
+     *
+     * @param factory 工厂
+     * @return 监听容器
+     */
+    @Bean(autowireCandidate = false)
+    public RedisMessageListenerContainer cacheRedisPlusListenerContainer(RedisConnectionFactory factory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        return container;
+    }
+
+    /**
+     * 本地一级缓存的跨节点失效同步
+     *
+     * @param factory       factory
+     * @param redisTemplate redisTemplate
+     * @return 同步器
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public LocalCacheSynchronizer localCacheSynchronizer(RedisConnectionFactory factory, RedisTemplate<String, Object> redisTemplate) {
+        return new LocalCacheSynchronizer(redisTemplate, cacheRedisPlusListenerContainer(factory), properties.getLocal());
+    }
+
+    /**
+     * 锁释放通知，单飞加载的等待方通过它被唤醒
+     *
+     * @param factory       factory
+     * @param redisTemplate redisTemplate
+     * @return 通知
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public LockNotifier lockNotifier(RedisConnectionFactory factory, RedisTemplate<String, Object> redisTemplate) {
+        return new LockNotifier(redisTemplate, cacheRedisPlusListenerContainer(factory), properties.getSingleFlight().getChannel());
+    }
+
+    /**
+     * 分布式锁的工厂，锁等待释放通知、持有期间续期
+     *
+     * @param redisTemplate redisTemplate
+     * @param lockNotifier  锁释放通知
+     * @return 工厂
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public RedisLockFactory redisLockFactory(RedisTemplate<String, Object> redisTemplate, LockNotifier lockNotifier) {
+        return new RedisLockFactory(redisTemplate, lockNotifier, properties.getLock().isWatchdog());
+    }
+
+    /**
+     * 启动后把lua脚本缓存到服务端
+     *
+     * @param redisTemplate redisTemplate
+     * @return 加载器
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public LuaScriptLoader luaScriptLoader(RedisTemplate<String, Object> redisTemplate) {
+        return new LuaScriptLoader(redisTemplate);
+    }
+
+    /**
+     * 缓存自动刷新的执行器
+     *
+     * @return 执行器
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public CacheRefreshExecutor cacheRefreshExecutor() {
+        return new CacheRefreshExecutor(properties.getRefresh());
+    }
+
+    /**
+     * 按到期时间定时刷新，第一个配置了scheduled的缓存创建时才开始领取
+     *
+     * @param redisTemplate redisTemplate
+     * @return 定时刷新
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public RefreshScheduler refreshScheduler(RedisTemplate<String, Object> redisTemplate) {
+        return new RefreshScheduler(redisTemplate, properties.getScheduler());
+    }
+
+    /**
+     * 没有Micrometer时不记录指标
+     *
+     * @return 指标
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public CacheMetricsFactory cacheMetricsFactory() {
+        return CacheMetricsFactory.NOOP;
+    }
+
     /**
      * 获取映射
      *
      * @return 结果
      */
     private ObjectMapper getObjectMapper() {
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new Jdk8Module());
-        objectMapper.registerModule(new JavaTimeModule());
-        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        objectMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-        objectMapper.activateDefaultTyping(LaissezFaireSubTypeValidator.instance,
-                ObjectMapper.DefaultTyping.NON_FINAL,
-                JsonTypeInfo.As.WRAPPER_ARRAY);
-        return objectMapper;
+        return ObjectMapperUtils.configure(new ObjectMapper());
+    }
+
+    /**
+     * 创建缓存值压缩，读取预置字典
+     *
+     * @return 压缩
+     */
+    private CompressionCodec getCompressionCodec() {
+        SpringCacheRedisPlusProperties.Compression compression = properties.getCompression();
+        byte[] dictionary = null;
+        if (compression.getDictionary() != null) {
+            try (InputStream in = compression.getDictionary().getInputStream()) {
+                dictionary = in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException("读取压缩字典失败：" + compression.getDictionary(), e);
+            }
+        }
+        return new CompressionCodec(compression.getLevel(), dictionary);
     }
 
     /**
@@ -114,6 +258,8 @@ public class SpringCacheRedisPlusAutoConfiguration {
      * 1、获取缓存后再获取一次有效时间，拿这个时间和我们配置的自动刷新时间比较，如果小于这个时间就刷新。
      * 2、每次创建缓存的时候维护一个Map，存放key和方法信息（反射）。当要刷新缓存的时候，根据key获取方法信息。
      * 通过获取其代理对象执行方法，刷新缓存。
+     * <p>
+     * 缓存值默认使用json格式，缓存名称上配置codec=smile的使用smile格式，读取时两种格式都支持
      *
      * @param factory       factory
      * @param redisTemplate redisTemplate
@@ -121,7 +267,10 @@ public class SpringCacheRedisPlusAutoConfiguration {
      */
     @Bean
     public RedisCacheManager cacheManager(RedisConnectionFactory factory, RedisTemplate<String, Object> redisTemplate) {
-        Jackson2JsonRedisSerializer<Object> redisSerializer = new Jackson2JsonRedisSerializer<>(getObjectMapper(), Object.class);
+        Jackson2JsonRedisSerializer<Object> jsonSerializer = new Jackson2JsonRedisSerializer<>(getObjectMapper(), Object.class);
+        CacheValueSerializer redisSerializer = new CacheValueSerializer(jsonSerializer, jsonSerializer,
+                new SmileRedisSerializer(properties.getCodec().getClassIds()), getCompressionCodec())
+                .withReadCompressed(properties.getCompression().isReadCompressed());
 
         RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig();
         config = config.entryTtl(Duration.ofSeconds(properties.getExpiration()))
@@ -132,6 +281,25 @@ public class SpringCacheRedisPlusAutoConfiguration {
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
                 .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(redisSerializer));
 
-        return new CustomizedRedisCacheManager(RedisCacheWriter.nonLockingRedisCacheWriter(factory), config, redisTemplate);
+        CacheStatisticsCollector statistics = properties.isStatistics() ? CacheStatisticsCollector.create() : CacheStatisticsCollector.none();
+        RedisCacheWriter cacheWriter = RedisCacheWriter.nonLockingRedisCacheWriter(factory).withStatisticsCollector(statistics);
+        return new CustomizedRedisCacheManager(cacheWriter, config, redisTemplate, redisSerializer, statistics);
+    }
+
+    /**
+     * 存在Micrometer时，有MeterRegistry就记录指标
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class MetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public CacheMetricsFactory cacheMetricsFactory(ObjectProvider<MeterRegistry> meterRegistry, CacheRefreshExecutor cacheRefreshExecutor,
+                                                       RedisLockFactory redisLockFactory) {
+            MeterRegistry registry = meterRegistry.getIfAvailable();
+            return registry == null ? CacheMetricsFactory.NOOP
+                    : new MicrometerCacheMetricsFactory(registry, cacheRefreshExecutor, redisLockFactory.getStatistics());
+        }
     }
 }
@@ -1,10 +1,14 @@
 package com.smarthito.cache.init;
 
 import lombok.Data;
+import org.springframework.core.io.Resource;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * @author yaojunguang at 2021/4/3 11:45 上午
  */
@@ -24,4 +28,212 @@ public class SpringCacheRedisPlusProperties {
      * 默认过期时间
      */
     private Integer expiration = 3600;
+
+    /**
+     * 默认的有效时间抖动，N%为±N%，N为随机增加0~N秒，缓存名称上的jitter配置项优先
+     */
+    private String ttlJitter;
+
+    /**
+     * 启动后预先解析所有@Cacheable方法的元数据，避免第一次调用时解析
+     */
+    private boolean precomputeMetadata = false;
+
+    /**
+     * 开启RedisCacheWriter的缓存统计(RedisCache.getStatistics)，lua脚本和批量读写同样计入
+     */
+    private boolean statistics = false;
+
+    /**
+     * 没有配置envelope的缓存也识别信封，关闭envelope后旧的信封数据过期前开启
+     */
+    private boolean readEnvelope = false;
+
+    /**
+     * 按缓存名称追加的配置项，格式与缓存名称中第三个#之后的部分相同
+     * 例如：spring.cache.redis.plus.caches.[cache:user]=local#...
+     * 缓存名称上直接配置的同名配置项优先
+     */
+    private Map<String, String> caches = new HashMap<>();
+
+    /**
+     * 本地一级缓存
+     */
+    private Local local = new Local();
+
+    /**
+     * 自动刷新的执行器
+     */
+    private Refresh refresh = new Refresh();
+
+    /**
+     * 按到期时间定时刷新，缓存名称上配置scheduled时使用
+     */
+    private Scheduler scheduler = new Scheduler();
+
+    /**
+     * 未命中时的跨节点单飞加载
+     */
+    private SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 分布式锁
+     */
+    private Lock lock = new Lock();
+
+    /**
+     * 缓存值的二进制格式
+     */
+    private Codec codec = new Codec();
+
+    /**
+     * 缓存值压缩
+     */
+    private Compression compression = new Compression();
+
+    @Data
+    public static class Local {
+
+        /**
+         * 默认最大条目数
+         */
+        private Long maximumSize = 10000L;
+
+        /**
+         * 最大权重(序列化后的字节数)，大于0时按权重限定容量
+         */
+        private Long maximumWeight = 0L;
+
+        /**
+         * 写入后存活时间(秒)，即跨节点不一致的最大窗口
+         */
+        private Long expireAfterWrite = 60L;
+
+        /**
+         * 跨节点失效通知的频道
+         */
+        private String channel = "spring:cache:redis:plus:local:invalidate";
+    }
+
+    @Data
+    public static class Refresh {
+
+        /**
+         * 核心线程数
+         */
+        private Integer corePoolSize = 5;
+
+        /**
+         * 最大线程数，使用虚拟线程时为最大并发数
+         */
+        private Integer maxPoolSize = 50;
+
+        /**
+         * 队列最大长度，队列满时丢弃刷新任务
+         */
+        private Integer queueCapacity = 1000;
+
+        /**
+         * 线程空闲时间(秒)
+         */
+        private Integer keepAliveSeconds = 120;
+
+        /**
+         * 是否使用虚拟线程，需要JDK21及以上
+         */
+        private boolean virtualThreads = false;
+
+        /**
+         * 单个缓存同时执行的刷新数上限，小于等于0不限制
+         */
+        private Integer perCacheMaxConcurrency = 0;
+    }
+
+    @Data
+    public static class Scheduler {
+
+        /**
+         * 领取到期key的间隔(毫秒)
+         */
+        private Long pollMillis = 1000L;
+
+        /**
+         * 每批最多领取的key数
+         */
+        private Integer batchSize = 100;
+
+        /**
+         * 领取后的租约(秒)，领取的节点没有完成刷新时，租约到期后由其他节点重新领取
+         */
+        private Integer leaseSeconds = 60;
+
+        /**
+         * 多久没有读取后不再定时刷新(秒)，到期时超过这个时间没有读取的key从刷新计划中删除，等待自然过期；
+         * 0表示使用缓存的刷新周期(有效时间-自动刷新时间)，即上一次刷新后没有读取过就不再刷新
+         */
+        private Integer idleSeconds = 0;
+    }
+
+    @Data
+    public static class SingleFlight {
+
+        /**
+         * 等待其他节点加载的最长时间(毫秒)，超时后直接执行方法
+         */
+        private Long waitMillis = 3000L;
+
+        /**
+         * 加载锁的有效时间(秒)，持有者异常退出时最多阻塞这么久
+         */
+        private Integer leaseSeconds = 30;
+
+        /**
+         * 锁释放通知的频道
+         */
+        private String channel = "spring:cache:redis:plus:lock:release";
+    }
+
+    @Data
+    public static class Lock {
+        /**
+         * 持有期间由看门狗续期，每过有效时间的三分之一续期一次
+         */
+        private boolean watchdog = true;
+    }
+
+    @Data
+    public static class Codec {
+
+        /**
+         * smile格式中代替类名的类型id，id -> 类名，一经使用不能修改
+         * 例如：spring.cache.redis.plus.codec.class-ids.user=com.example.UserDto
+         */
+        private Map<String, String> classIds = new HashMap<>();
+    }
+
+    @Data
+    public static class Compression {
+
+        /**
+         * 默认压缩阈值(字节)，缓存名称上可以单独指定
+         */
+        private Integer threshold = 1024;
+
+        /**
+         * 压缩级别，0-9
+         */
+        private Integer level = 6;
+
+        /**
+         * 预置字典，使用典型的缓存值拼接而成，最多使用最后32K
+         * 适合大量相似的小json，使用后不能修改，否则已有的压缩数据无法读取
+         */
+        private Resource dictionary;
+
+        /**
+         * 没有开启压缩的缓存也识别压缩数据，关闭压缩后旧的压缩数据过期前开启
+         * 关闭时只有开启压缩的缓存识别，自定义序列化器写入的数据以压缩标记开头时不会被误认为压缩数据
+         */
+        private boolean readCompressed = false;
+    }
 }
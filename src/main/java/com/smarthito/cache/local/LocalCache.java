@@ -0,0 +1,149 @@
+package com.smarthito.cache.local;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.smarthito.cache.init.SpringCacheRedisPlusProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内一级缓存，位于redis缓存之前
+ * 使用caffeine的W-TinyLFU淘汰策略，按条目数或序列化后的字节数限定容量
+ * 存放的是反序列化后的缓存值，命中时不再访问redis，也不再做json反序列化
+ *
+ * @author yaojunguang
+ */
+public class LocalCache {
+
+    /**
+     * 对应的redis缓存名称
+     */
+    private final String name;
+
+    /**
+     * 写入后的最长存活时间，纳秒
+     */
+    private final long expireAfterWriteNanos;
+
+    private final Cache<String, LocalValue> store;
+
+    private final LocalCacheSynchronizer synchronizer;
+
+    LocalCache(String name, long maximumSize, SpringCacheRedisPlusProperties.Local properties, LocalCacheSynchronizer synchronizer) {
+        this.name = name;
+        this.synchronizer = synchronizer;
+        this.expireAfterWriteNanos = TimeUnit.SECONDS.toNanos(properties.getExpireAfterWrite());
+
+        Caffeine<Object, Object> builder = Caffeine.newBuilder();
+        if (properties.getMaximumWeight() != null && properties.getMaximumWeight() > 0) {
+            builder.maximumWeight(properties.getMaximumWeight());
+            builder.weigher((String key, LocalValue value) -> value.weight);
+        } else {
+            builder.maximumSize(maximumSize);
+        }
+        this.store = builder.expireAfter(new Expiry<String, LocalValue>() {
+            @Override
+            public long expireAfterCreate(String key, LocalValue value, long currentTime) {
+                return value.expireNanos;
+            }
+
+            @Override
+            public long expireAfterUpdate(String key, LocalValue value, long currentTime, long currentDuration) {
+                return value.expireNanos;
+            }
+
+            @Override
+            public long expireAfterRead(String key, LocalValue value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        }).build();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取本地缓存的值
+     *
+     * @param cacheKey redis中的缓存key
+     * @return 缓存值(可能是NullValue)，不存在返回null
+     */
+    public Object get(String cacheKey) {
+        LocalValue value = store.getIfPresent(cacheKey);
+        return value == null ? null : value.value;
+    }
+
+    /**
+     * 放入本地缓存，使用默认的写入后存活时间
+     *
+     * @param cacheKey redis中的缓存key
+     * @param value    反序列化后的缓存值
+     * @param weight   序列化后的字节数
+     */
+    public void put(String cacheKey, Object value, int weight) {
+        put(cacheKey, value, weight, expireAfterWriteNanos);
+    }
+
+    /**
+     * 放入本地缓存，存活时间不超过默认的写入后存活时间
+     *
+     * @param cacheKey    redis中的缓存key
+     * @param value       反序列化后的缓存值
+     * @param weight      序列化后的字节数
+     * @param expireNanos 期望的存活时间，纳秒
+     */
+    public void put(String cacheKey, Object value, int weight, long expireNanos) {
+        long nanos = Math.min(expireNanos, expireAfterWriteNanos);
+        if (nanos > 0) {
+            store.put(cacheKey, new LocalValue(value, weight, nanos));
+        }
+    }
+
+    /**
+     * 失效本节点以及其他节点的本地缓存
+     *
+     * @param cacheKey redis中的缓存key
+     */
+    public void evict(String cacheKey) {
+        store.invalidate(cacheKey);
+        synchronizer.publish(name, cacheKey);
+    }
+
+    /**
+     * 清空本节点以及其他节点的本地缓存
+     */
+    public void clear() {
+        store.invalidateAll();
+        synchronizer.publish(name, null);
+    }
+
+    /**
+     * 收到其他节点的失效通知
+     *
+     * @param cacheKey redis中的缓存key，null表示清空
+     */
+    void invalidateLocal(String cacheKey) {
+        if (cacheKey == null) {
+            store.invalidateAll();
+        } else {
+            store.invalidate(cacheKey);
+        }
+    }
+
+    private static final class LocalValue {
+
+        private final Object value;
+
+        private final int weight;
+
+        private final long expireNanos;
+
+        private LocalValue(Object value, int weight, long expireNanos) {
+            this.value = value;
+            this.weight = weight;
+            this.expireNanos = expireNanos;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.smarthito.cache.local;
+
+import com.smarthito.cache.init.SpringCacheRedisPlusProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 本地一级缓存的跨节点同步
+ * 任一节点put、evict、clear时通过redis的pub/sub通知所有节点失效对应的本地缓存
+ * <p>
+ * 消息格式：节点ID\n缓存名称\n缓存key，缓存key为空表示清空整个缓存
+ * 消息丢失时本地缓存最多在写入后存活时间内不一致
+ *
+ * @author yaojunguang
+ */
+@Slf4j
+public class LocalCacheSynchronizer implements MessageListener {
+
+    private static final char SEPARATOR = '\n';
+
+    /**
+     * 本节点ID，忽略自己发出的消息
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final SpringCacheRedisPlusProperties.Local properties;
+
+    private final byte[] channel;
+
+    private final Map<String, LocalCache> caches = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+    public LocalCacheSynchronizer(RedisTemplate<String, Object> redisTemplate, RedisMessageListenerContainer listenerContainer,
+                                  SpringCacheRedisPlusProperties.Local properties) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.properties = properties;
+        this.channel = properties.getChannel().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 创建本地缓存，第一个本地缓存创建时才订阅失效频道
+     *
+     * @param cacheName   缓存名称
+     * @param maximumSize 最大条目数，小于等于0时使用全局配置
+     * @return 本地缓存
+     */
+    public LocalCache createCache(String cacheName, long maximumSize) {
+        LocalCache localCache = caches.computeIfAbsent(cacheName, name ->
+                new LocalCache(name, maximumSize > 0 ? maximumSize : properties.getMaximumSize(), properties, this));
+        if (subscribed.compareAndSet(false, true)) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(properties.getChannel()));
+            log.info("本地缓存订阅失效频道：{}", properties.getChannel());
+        }
+        return localCache;
+    }
+
+    /**
+     * 广播失效消息
+     *
+     * @param cacheName 缓存名称
+     * @param cacheKey  缓存key，null表示清空
+     */
+    void publish(String cacheName, String cacheKey) {
+        String body = nodeId + SEPARATOR + cacheName + SEPARATOR + (cacheKey == null ? "" : cacheKey);
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.publish(channel, body.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            log.info("本地缓存失效消息发送失败：" + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int first = body.indexOf(SEPARATOR);
+        int second = first < 0 ? -1 : body.indexOf(SEPARATOR, first + 1);
+        if (second < 0) {
+            return;
+        }
+        if (nodeId.regionMatches(0, body, 0, first) && nodeId.length() == first) {
+            return;
+        }
+        LocalCache localCache = caches.get(body.substring(first + 1, second));
+        if (localCache != null) {
+            String cacheKey = body.substring(second + 1);
+            localCache.invalidateLocal(cacheKey.isEmpty() ? null : cacheKey);
+        }
+    }
+}
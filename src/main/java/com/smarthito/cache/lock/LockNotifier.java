@@ -0,0 +1,115 @@
+package com.smarthito.cache.lock;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 锁释放通知
+ * 释放锁的节点通过redis的pub/sub广播锁名称，等待该锁的线程被唤醒，不需要轮询
+ * <p>
+ * 所有锁共用一个频道，消息内容为锁名称；RedisLock的解锁脚本在删除锁的同时发布
+ *
+ * @author yaojunguang
+ */
+@Slf4j
+public class LockNotifier implements MessageListener {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final String channel;
+
+    private final byte[] channelBytes;
+
+    private final Map<String, Set<CountDownLatch>> waiters = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+    public LockNotifier(RedisTemplate<String, Object> redisTemplate, RedisMessageListenerContainer listenerContainer, String channel) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.channel = channel;
+        this.channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 订阅通知频道，第一次调用时才订阅
+     */
+    public void subscribe() {
+        if (subscribed.compareAndSet(false, true)) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+            log.info("订阅锁释放频道：{}", channel);
+        }
+    }
+
+    /**
+     * 登记等待，需要在确认锁被占用之前登记，避免错过通知
+     *
+     * @param name 锁名称
+     * @return 收到通知时释放的门闩
+     */
+    public CountDownLatch register(String name) {
+        subscribe();
+        CountDownLatch latch = new CountDownLatch(1);
+        waiters.compute(name, (key, latches) -> {
+            if (latches == null) {
+                latches = ConcurrentHashMap.newKeySet();
+            }
+            latches.add(latch);
+            return latches;
+        });
+        return latch;
+    }
+
+    /**
+     * 取消等待
+     *
+     * @param name  锁名称
+     * @param latch register返回的门闩
+     */
+    public void unregister(String name, CountDownLatch latch) {
+        waiters.computeIfPresent(name, (key, latches) -> {
+            latches.remove(latch);
+            return latches.isEmpty() ? null : latches;
+        });
+    }
+
+    /**
+     * 广播锁已释放
+     *
+     * @param name 锁名称
+     */
+    public void publish(String name) {
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.publish(channelBytes, name.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            log.info("锁释放消息发送失败：" + e.getMessage(), e);
+        }
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Set<CountDownLatch> latches = waiters.get(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (latches != null) {
+            latches.forEach(CountDownLatch::countDown);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.smarthito.cache.lock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分布式锁的统计
+ * 获取锁的次数、等待耗时、竞争(第一次没有拿到锁)和失败次数，以及看门狗续期情况
+ *
+ * @author yaojunguang
+ */
+public class LockStatistics {
+
+    private final LongAdder acquired = new LongAdder();
+
+    private final LongAdder contended = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder waitNanos = new LongAdder();
+
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private final LongAdder renewals = new LongAdder();
+
+    private final LongAdder leaseLost = new LongAdder();
+
+    /**
+     * 记录获取锁成功
+     *
+     * @param waitNanos 等待耗时，纳秒
+     * @param contended 是否经过了等待
+     */
+    void recordAcquired(long waitNanos, boolean contended) {
+        acquired.increment();
+        if (contended) {
+            this.contended.increment();
+            recordWait(waitNanos);
+        }
+    }
+
+    /**
+     * 记录获取锁失败，锁被其他调用方持有或等待超时
+     *
+     * @param waitNanos 等待耗时，纳秒
+     */
+    void recordFailed(long waitNanos) {
+        failed.increment();
+        contended.increment();
+        recordWait(waitNanos);
+    }
+
+    /**
+     * 记录续期
+     *
+     * @param success 是否成功，失败说明锁已经过期或被其他调用方持有
+     */
+    void recordRenewal(boolean success) {
+        if (success) {
+            renewals.increment();
+        } else {
+            leaseLost.increment();
+        }
+    }
+
+    private void recordWait(long nanos) {
+        waitNanos.add(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    public long getContendedCount() {
+        return contended.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getRenewalCount() {
+        return renewals.sum();
+    }
+
+    public long getLeaseLostCount() {
+        return leaseLost.sum();
+    }
+
+    /**
+     * @return 累计等待时间，毫秒
+     */
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+    }
+
+    /**
+     * @return 最长等待时间，毫秒
+     */
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+}
@@ -1,5 +1,6 @@
 package com.smarthito.cache.lock;
 
+import com.smarthito.cache.script.LuaScripts;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.data.redis.connection.RedisStringCommands;
@@ -12,6 +13,9 @@ import org.springframework.util.Assert;
 import java.nio.charset.StandardCharsets;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Redis分布式锁
@@ -34,6 +38,9 @@ import java.util.UUID;
  * <p>
  * 如果服务器返回 OK ，那么这个客户端获得锁。
  * 如果服务器返回 NIL ，那么客户端获取锁失败，可以在稍后再重试。
+ * <p>
+ * 通过RedisLockFactory创建时：锁被占用时等待解锁脚本发布的释放通知，不再轮询；
+ * 持有期间看门狗定时续期，持有者存活时不会因为执行时间长而失去锁
  *
  * @author yuhao.wangwang
  */
@@ -52,6 +59,16 @@ public class RedisLock {
      */
     public static final int EXPIRE = 60;
 
+    /**
+     * 锁的key的后缀
+     */
+    public static final String LOCK_SUFFIX = "_lock";
+
+    /**
+     * 等待释放通知的最长时间(ms)，持有者异常退出时没有通知，需要重新尝试
+     */
+    private static final long MAX_WAIT_SLICE = 1000;
+
     /**
      * 解锁的lua脚本
      */
@@ -75,7 +92,7 @@ public class RedisLock {
     /**
      * 锁对应的值
      */
-    private String lockValue;
+    private volatile String lockValue;
 
     /**
      * 锁的有效时间(s)
@@ -94,6 +111,16 @@ public class RedisLock {
 
     final Random random = new Random();
 
+    /**
+     * 创建锁的工厂，为null时轮询获取锁、不续期
+     */
+    private final RedisLockFactory factory;
+
+    /**
+     * 看门狗的续期任务
+     */
+    private volatile ScheduledFuture<?> renewal;
+
     /**
      * 使用默认的锁过期时间和请求锁的超时时间
      *
@@ -102,7 +129,23 @@ public class RedisLock {
      */
     public RedisLock(RedisTemplate redisTemplate, String lockKey) {
         this.redisTemplate = redisTemplate;
-        this.lockKey = lockKey + "_lock";
+        this.lockKey = lockKey + LOCK_SUFFIX;
+        this.factory = null;
+    }
+
+    /**
+     * 由RedisLockFactory创建
+     *
+     * @param redisTemplate a
+     * @param lockKey       锁的key（Redis的Key）
+     * @param expireTime    锁的过期时间(单位：秒)
+     * @param factory       工厂
+     */
+    RedisLock(RedisTemplate redisTemplate, String lockKey, int expireTime, RedisLockFactory factory) {
+        this.redisTemplate = redisTemplate;
+        this.lockKey = lockKey + LOCK_SUFFIX;
+        this.expireTime = expireTime;
+        this.factory = factory;
     }
 
     /**
@@ -152,6 +195,9 @@ public class RedisLock {
         lockValue = UUID.randomUUID().toString();
         // 请求锁超时时间，纳秒
         long timeout = timeOut * 1000000;
+        if (factory != null) {
+            return awaitLock(timeout);
+        }
         // 系统当前时间，纳秒
         long nowTime = System.nanoTime();
         while ((System.nanoTime() - nowTime) < timeout) {
@@ -176,9 +222,12 @@ public class RedisLock {
         lockValue = UUID.randomUUID().toString();
         //不存在则添加 且设置过期时间（单位ms）
         if (set(lockKey, lockValue, expireTime)) {
-            locked = true;
+            onLocked(0, false);
             return true;
         }
+        if (factory != null) {
+            factory.getStatistics().recordFailed(0);
+        }
         return false;
     }
 
@@ -189,6 +238,9 @@ public class RedisLock {
      */
     public boolean lockBlock() {
         lockValue = UUID.randomUUID().toString();
+        if (factory != null) {
+            return awaitLock(Long.MAX_VALUE);
+        }
         while (true) {
             //不存在则添加 且设置过期时间（单位ms）
             if (set(lockKey, lockValue, expireTime)) {
@@ -201,6 +253,78 @@ public class RedisLock {
         }
     }
 
+    /**
+     * 等待释放通知获取锁
+     * 先登记再尝试，避免在尝试和登记之间错过通知
+     *
+     * @param timeout 超时时间，纳秒
+     * @return 是否成功获得锁
+     */
+    private boolean awaitLock(long timeout) {
+        LockNotifier notifier = factory.getLockNotifier();
+        long start = System.nanoTime();
+        boolean contended = false;
+        while (true) {
+            CountDownLatch latch = notifier.register(lockKey);
+            try {
+                if (set(lockKey, lockValue, expireTime)) {
+                    onLocked(System.nanoTime() - start, contended);
+                    return true;
+                }
+                contended = true;
+                long remaining = timeout - (System.nanoTime() - start);
+                if (remaining <= 0) {
+                    break;
+                }
+                latch.await(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_SLICE)), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.info("获取分布式锁等待被中断：{}", lockKey);
+                break;
+            } finally {
+                notifier.unregister(lockKey, latch);
+            }
+        }
+        factory.getStatistics().recordFailed(System.nanoTime() - start);
+        return false;
+    }
+
+    private void onLocked(long waitNanos, boolean contended) {
+        locked = true;
+        if (factory != null) {
+            factory.getStatistics().recordAcquired(waitNanos, contended);
+            renewal = factory.scheduleRenewal(this);
+        }
+    }
+
+    /**
+     * 续期，锁已经不属于自己时停止续期
+     */
+    void renew() {
+        try {
+            Long result = (Long) redisTemplate.execute((RedisCallback<Long>) connection ->
+                    LuaScripts.RENEW.eval(connection.scriptingCommands(), ReturnType.INTEGER, 1, lockKey.getBytes(StandardCharsets.UTF_8),
+                            lockValue.getBytes(StandardCharsets.UTF_8),
+                            String.valueOf(TimeUnit.SECONDS.toMillis(expireTime)).getBytes(StandardCharsets.UTF_8)));
+            boolean success = result != null && result == 1;
+            factory.getStatistics().recordRenewal(success);
+            if (!success) {
+                log.info("Redis分布式锁续期失败，锁已经过期：{}", lockKey);
+                cancelRenewal();
+            }
+        } catch (Exception e) {
+            log.info("Redis分布式锁续期异常：" + e.getMessage(), e);
+        }
+    }
+
+    private void cancelRenewal() {
+        ScheduledFuture<?> future = renewal;
+        if (future != null) {
+            future.cancel(false);
+            renewal = null;
+        }
+    }
+
     public Boolean unlock() {
         /**
          * 解锁
@@ -214,9 +338,13 @@ public class RedisLock {
         // 只有加锁成功并且锁还有效才去释放锁
         // 只有加锁成功并且锁还有效才去释放锁
         if (locked) {
+            cancelRenewal();
             return (Boolean) redisTemplate.execute((RedisCallback<Boolean>) connection -> {
 
-                Long result = connection.eval(UNLOCK_LUA.getBytes(), ReturnType.INTEGER, 1, lockKey.getBytes(StandardCharsets.UTF_8), lockValue.getBytes(StandardCharsets.UTF_8));
+                Long result = factory == null
+                        ? LuaScripts.UNLOCK.eval(connection.scriptingCommands(), ReturnType.INTEGER, 1, lockKey.getBytes(StandardCharsets.UTF_8), lockValue.getBytes(StandardCharsets.UTF_8))
+                        : LuaScripts.UNLOCK_PUBLISH.eval(connection.scriptingCommands(), ReturnType.INTEGER, 1, lockKey.getBytes(StandardCharsets.UTF_8),
+                        lockValue.getBytes(StandardCharsets.UTF_8), factory.getLockNotifier().getChannel().getBytes(StandardCharsets.UTF_8));
 
                 if (result != null && result == 0 && !StringUtils.isEmpty(lockKeyLog)) {
                     log.info("Redis分布式锁，解锁{}失败！解锁时间：{}", lockKeyLog, System.currentTimeMillis());
@@ -272,6 +400,10 @@ public class RedisLock {
         }
     }
 
+    public String getLockKey() {
+        return lockKey;
+    }
+
     public String getLockKeyLog() {
         return lockKeyLog;
     }
@@ -0,0 +1,91 @@
+package com.smarthito.cache.lock;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式锁的创建
+ * 创建的锁在锁被占用时等待释放通知，不再轮询；持有期间由看门狗续期，统计共用
+ *
+ * @author yaojunguang
+ */
+@Slf4j
+public class RedisLockFactory implements DisposableBean {
+
+    private static final String THREAD_NAME_PREFIX = "cache-lock-watchdog-";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final LockNotifier lockNotifier;
+
+    private final LockStatistics statistics = new LockStatistics();
+
+    /**
+     * 看门狗，未开启时为null
+     */
+    private final ScheduledThreadPoolExecutor watchdog;
+
+    /**
+     * @param redisTemplate redisTemplate
+     * @param lockNotifier  锁释放通知
+     * @param watchdog      是否在持有期间续期
+     */
+    public RedisLockFactory(RedisTemplate<String, Object> redisTemplate, LockNotifier lockNotifier, boolean watchdog) {
+        this.redisTemplate = redisTemplate;
+        this.lockNotifier = lockNotifier;
+        if (watchdog) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(THREAD_NAME_PREFIX);
+            threadFactory.setDaemon(true);
+            this.watchdog = new ScheduledThreadPoolExecutor(1, threadFactory);
+            this.watchdog.setRemoveOnCancelPolicy(true);
+        } else {
+            this.watchdog = null;
+        }
+    }
+
+    /**
+     * 创建锁
+     *
+     * @param lockKey    锁的key，实际的key会追加_lock
+     * @param expireTime 锁的有效时间(秒)，开启看门狗时每过三分之一续期一次
+     * @return 锁
+     */
+    public RedisLock create(String lockKey, int expireTime) {
+        return new RedisLock(redisTemplate, lockKey, expireTime, this);
+    }
+
+    public LockNotifier getLockNotifier() {
+        return lockNotifier;
+    }
+
+    public LockStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * 定时续期
+     *
+     * @param lock 锁
+     * @return 取消续期使用，未开启看门狗时返回null
+     */
+    ScheduledFuture<?> scheduleRenewal(RedisLock lock) {
+        if (watchdog == null) {
+            return null;
+        }
+        long period = Math.max(TimeUnit.SECONDS.toMillis(lock.getExpireTime()) / 3, 1);
+        return watchdog.scheduleAtFixedRate(lock::renew, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.smarthito.cache.metrics;
+
+/**
+ * 单个缓存的指标记录
+ * 每个缓存创建时获取一次，热点路径上只有计数和计时，没有查找
+ *
+ * @author yaojunguang
+ */
+public interface CacheMetrics {
+
+    /**
+     * 不记录
+     */
+    CacheMetrics NOOP = new CacheMetrics() {
+    };
+
+    /**
+     * 刷新结果
+     */
+    enum RefreshOutcome {
+        /**
+         * 已提交到刷新执行器
+         */
+        TRIGGERED,
+        /**
+         * 刷新完成
+         */
+        EXECUTED,
+        /**
+         * 执行器已满、没有拿到刷新锁或者已经被其他节点刷新
+         */
+        SKIPPED,
+        /**
+         * 刷新异常
+         */
+        FAILED
+    }
+
+    /**
+     * 记录一次读取
+     *
+     * @param hit   是否命中
+     * @param nanos 耗时，纳秒
+     */
+    default void recordGet(boolean hit, long nanos) {
+    }
+
+    /**
+     * 记录一次批量读取
+     *
+     * @param hits   命中数
+     * @param misses 未命中数
+     * @param nanos  耗时，纳秒
+     */
+    default void recordBatchGet(int hits, int misses, long nanos) {
+    }
+
+    /**
+     * 记录一次写入
+     *
+     * @param nanos 耗时，纳秒
+     */
+    default void recordPut(long nanos) {
+    }
+
+    /**
+     * 记录一次需要剩余时间的redis读取
+     *
+     * @param nanos 耗时，纳秒
+     */
+    default void recordTtlCheck(long nanos) {
+    }
+
+    /**
+     * 记录一次加载(方法执行)
+     *
+     * @param nanos 耗时，纳秒
+     */
+    default void recordLoad(long nanos) {
+    }
+
+    /**
+     * 记录刷新结果
+     *
+     * @param outcome 结果
+     * @param count   个数
+     */
+    default void recordRefresh(RefreshOutcome outcome, int count) {
+    }
+}
@@ -0,0 +1,22 @@
+package com.smarthito.cache.metrics;
+
+/**
+ * 按缓存名称创建指标记录
+ *
+ * @author yaojunguang
+ */
+public interface CacheMetricsFactory {
+
+    /**
+     * 不记录，没有MeterRegistry时使用
+     */
+    CacheMetricsFactory NOOP = cacheName -> CacheMetrics.NOOP;
+
+    /**
+     * 创建缓存的指标记录
+     *
+     * @param cacheName 缓存名称
+     * @return 指标记录
+     */
+    CacheMetrics forCache(String cacheName);
+}
@@ -0,0 +1,137 @@
+package com.smarthito.cache.metrics;
+
+import com.smarthito.cache.lock.LockStatistics;
+import com.smarthito.cache.refresh.CacheRefreshExecutor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用Micrometer记录指标
+ * 缓存指标按cache标签区分；刷新执行器和分布式锁的指标是全局的
+ *
+ * @author yaojunguang
+ */
+public class MicrometerCacheMetricsFactory implements CacheMetricsFactory {
+
+    private static final String PREFIX = "cache.redis.plus.";
+
+    private static final String TAG_CACHE = "cache";
+
+    private final MeterRegistry registry;
+
+    /**
+     * @param registry        registry
+     * @param refreshExecutor 刷新执行器，可以为null
+     * @param lockStatistics  分布式锁统计，可以为null
+     */
+    public MicrometerCacheMetricsFactory(MeterRegistry registry, CacheRefreshExecutor refreshExecutor, LockStatistics lockStatistics) {
+        this.registry = registry;
+        if (refreshExecutor != null) {
+            Gauge.builder(PREFIX + "refresh.queue.size", refreshExecutor, CacheRefreshExecutor::getQueueSize)
+                    .description("等待执行的刷新任务数").register(registry);
+            Gauge.builder(PREFIX + "refresh.post-write.queue.size", refreshExecutor, CacheRefreshExecutor::getPostWriteQueueSize)
+                    .description("等待执行的异步写入后处理数").register(registry);
+            Gauge.builder(PREFIX + "refresh.pending", refreshExecutor, CacheRefreshExecutor::getPendingCount)
+                    .description("已提交未完成的刷新任务数").register(registry);
+            FunctionCounter.builder(PREFIX + "refresh.submitted", refreshExecutor, CacheRefreshExecutor::getSubmittedCount)
+                    .register(registry);
+            FunctionCounter.builder(PREFIX + "refresh.rejected", refreshExecutor, CacheRefreshExecutor::getRejectedCount)
+                    .register(registry);
+        }
+        if (lockStatistics != null) {
+            FunctionCounter.builder(PREFIX + "lock.acquisitions", lockStatistics, LockStatistics::getAcquiredCount)
+                    .tag("result", "acquired").register(registry);
+            FunctionCounter.builder(PREFIX + "lock.acquisitions", lockStatistics, LockStatistics::getFailedCount)
+                    .tag("result", "failed").register(registry);
+            FunctionCounter.builder(PREFIX + "lock.contended", lockStatistics, LockStatistics::getContendedCount)
+                    .register(registry);
+            FunctionCounter.builder(PREFIX + "lock.wait", lockStatistics, LockStatistics::getTotalWaitMillis)
+                    .baseUnit("milliseconds").register(registry);
+            Gauge.builder(PREFIX + "lock.wait.max", lockStatistics, LockStatistics::getMaxWaitMillis)
+                    .baseUnit("milliseconds").register(registry);
+            FunctionCounter.builder(PREFIX + "lock.renewals", lockStatistics, LockStatistics::getRenewalCount)
+                    .tag("result", "renewed").register(registry);
+            FunctionCounter.builder(PREFIX + "lock.renewals", lockStatistics, LockStatistics::getLeaseLostCount)
+                    .tag("result", "lost").register(registry);
+        }
+    }
+
+    @Override
+    public CacheMetrics forCache(String cacheName) {
+        return new MicrometerCacheMetrics(registry, cacheName);
+    }
+
+    private static final class MicrometerCacheMetrics implements CacheMetrics {
+
+        private final Counter hits;
+
+        private final Counter misses;
+
+        private final Timer getTimer;
+
+        private final Timer batchGetTimer;
+
+        private final Timer putTimer;
+
+        private final Timer ttlCheckTimer;
+
+        private final Timer loadTimer;
+
+        private final Map<RefreshOutcome, Counter> refreshes = new EnumMap<>(RefreshOutcome.class);
+
+        private MicrometerCacheMetrics(MeterRegistry registry, String cacheName) {
+            hits = Counter.builder(PREFIX + "gets").tag(TAG_CACHE, cacheName).tag("result", "hit").register(registry);
+            misses = Counter.builder(PREFIX + "gets").tag(TAG_CACHE, cacheName).tag("result", "miss").register(registry);
+            getTimer = Timer.builder(PREFIX + "get").tag(TAG_CACHE, cacheName).publishPercentileHistogram().register(registry);
+            batchGetTimer = Timer.builder(PREFIX + "get.batch").tag(TAG_CACHE, cacheName).register(registry);
+            putTimer = Timer.builder(PREFIX + "put").tag(TAG_CACHE, cacheName).publishPercentileHistogram().register(registry);
+            ttlCheckTimer = Timer.builder(PREFIX + "ttl.check").tag(TAG_CACHE, cacheName).register(registry);
+            loadTimer = Timer.builder(PREFIX + "load").tag(TAG_CACHE, cacheName).publishPercentileHistogram().register(registry);
+            for (RefreshOutcome outcome : RefreshOutcome.values()) {
+                refreshes.put(outcome, Counter.builder(PREFIX + "refreshes").tag(TAG_CACHE, cacheName)
+                        .tag("result", outcome.name().toLowerCase(Locale.ROOT)).register(registry));
+            }
+        }
+
+        @Override
+        public void recordGet(boolean hit, long nanos) {
+            (hit ? hits : misses).increment();
+            getTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void recordBatchGet(int hits, int misses, long nanos) {
+            this.hits.increment(hits);
+            this.misses.increment(misses);
+            batchGetTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void recordPut(long nanos) {
+            putTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void recordTtlCheck(long nanos) {
+            ttlCheckTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void recordLoad(long nanos) {
+            loadTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void recordRefresh(RefreshOutcome outcome, int count) {
+            refreshes.get(outcome).increment(count);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.smarthito.cache.refresh;
+
+import com.smarthito.cache.init.SpringCacheRedisPlusProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存自动刷新的执行器
+ * 队列满、单个缓存的并发数达到上限时直接丢弃并计数，不会阻塞或抛异常到读缓存的线程，
+ * 被丢弃的刷新会在之后的命中中再次触发
+ * <p>
+ * JDK21及以上可以使用虚拟线程，此时没有队列，同时执行的刷新数不超过最大线程数
+ *
+ * @author yaojunguang
+ */
+@Slf4j
+public class CacheRefreshExecutor implements DisposableBean {
+
+    private static final String THREAD_NAME_PREFIX = "cache-refresh-";
+
+    private static final String POST_WRITE_THREAD_NAME_PREFIX = "cache-post-write-";
+
+    private final SpringCacheRedisPlusProperties.Refresh properties;
+
+    /**
+     * 平台线程池，使用虚拟线程时为null
+     */
+    private final ThreadPoolExecutor threadPool;
+
+    private final Executor executor;
+
+    /**
+     * 异步写入后的处理，与刷新分开，不受刷新队列的限制
+     */
+    private final ThreadPoolExecutor postWritePool;
+
+    private final Executor postWriteExecutor;
+
+    /**
+     * 使用虚拟线程时限制同时执行的刷新数
+     */
+    private final Semaphore virtualPermits;
+
+    private final Map<String, Semaphore> cachePermits = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final LongAdder submitted = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    public CacheRefreshExecutor(SpringCacheRedisPlusProperties.Refresh properties) {
+        this.properties = properties;
+        Executor virtualExecutor = properties.isVirtualThreads() ? newVirtualThreadExecutor() : null;
+        if (virtualExecutor != null) {
+            this.threadPool = null;
+            this.executor = virtualExecutor;
+            this.virtualPermits = new Semaphore(properties.getMaxPoolSize());
+            log.info("缓存刷新使用虚拟线程，最大并发数：{}", properties.getMaxPoolSize());
+        } else {
+            this.threadPool = new ThreadPoolExecutor(properties.getCorePoolSize(), properties.getMaxPoolSize(),
+                    properties.getKeepAliveSeconds(), TimeUnit.SECONDS, new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                    newThreadFactory(THREAD_NAME_PREFIX), (runnable, pool) -> {
+                throw new RejectedExecutionException();
+            });
+            this.executor = threadPool;
+            this.virtualPermits = null;
+        }
+        if (virtualExecutor != null) {
+            this.postWritePool = null;
+            this.postWriteExecutor = virtualExecutor;
+        } else {
+            // 无界队列：写入后的处理不能丢弃(其他节点的本地缓存需要失效)，也不能在redis客户端的线程中执行
+            this.postWritePool = new ThreadPoolExecutor(properties.getCorePoolSize(), properties.getCorePoolSize(),
+                    properties.getKeepAliveSeconds(), TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    newThreadFactory(POST_WRITE_THREAD_NAME_PREFIX));
+            this.postWritePool.allowCoreThreadTimeOut(true);
+            this.postWriteExecutor = postWritePool;
+        }
+    }
+
+    /**
+     * 提交刷新任务，无法执行时丢弃
+     *
+     * @param cacheName 缓存名称，用于限制单个缓存的并发数
+     * @param task      任务
+     * @return 是否已提交
+     */
+    public boolean submit(String cacheName, Runnable task) {
+        Semaphore cachePermit = getCachePermit(cacheName);
+        if (cachePermit != null && !cachePermit.tryAcquire()) {
+            reject(cacheName);
+            return false;
+        }
+        if (virtualPermits != null && !virtualPermits.tryAcquire()) {
+            release(cachePermit, false);
+            reject(cacheName);
+            return false;
+        }
+        pending.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.info(e.getMessage(), e);
+                } finally {
+                    pending.decrementAndGet();
+                    release(cachePermit, true);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            release(cachePermit, true);
+            reject(cacheName);
+            return false;
+        }
+        submitted.increment();
+        return true;
+    }
+
+    /**
+     * 执行异步写入后的阻塞处理(失效本地缓存、注册方法信息)，离开redis客户端的事件循环线程
+     * 使用单独的无界队列，不受刷新队列和并发数的限制，也不会在调用线程中执行；只有关闭后才丢弃
+     *
+     * @param task 任务
+     */
+    public void execute(Runnable task) {
+        try {
+            postWriteExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.debug("缓存写入后的处理已关闭，丢弃");
+        }
+    }
+
+    private Semaphore getCachePermit(String cacheName) {
+        int limit = properties.getPerCacheMaxConcurrency();
+        if (limit <= 0) {
+            return null;
+        }
+        return cachePermits.computeIfAbsent(cacheName, name -> new Semaphore(limit));
+    }
+
+    private void release(Semaphore cachePermit, boolean releaseVirtual) {
+        if (cachePermit != null) {
+            cachePermit.release();
+        }
+        if (releaseVirtual && virtualPermits != null) {
+            virtualPermits.release();
+        }
+    }
+
+    private void reject(String cacheName) {
+        rejected.increment();
+        log.debug("缓存刷新任务已满，丢弃 cacheName：{}", cacheName);
+    }
+
+    /**
+     * 创建虚拟线程执行器，JDK21以下不支持时返回null，改用线程池
+     *
+     * @return 执行器
+     */
+    private Executor newVirtualThreadExecutor() {
+        try {
+            return new VirtualThreadTaskExecutor(THREAD_NAME_PREFIX);
+        } catch (UnsupportedOperationException e) {
+            log.warn("当前JDK不支持虚拟线程，缓存刷新改用线程池");
+            return null;
+        }
+    }
+
+    private CustomizableThreadFactory newThreadFactory(String threadNamePrefix) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    /**
+     * @return 等待执行的任务数，使用虚拟线程时为0
+     */
+    public int getQueueSize() {
+        return threadPool == null ? 0 : threadPool.getQueue().size();
+    }
+
+    /**
+     * @return 等待执行的写入后处理数，使用虚拟线程时为0
+     */
+    public int getPostWriteQueueSize() {
+        return postWritePool == null ? 0 : postWritePool.getQueue().size();
+    }
+
+    /**
+     * @return 已提交还未结束的任务数
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @return 累计提交的任务数
+     */
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    /**
+     * @return 累计丢弃的任务数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void destroy() {
+        if (threadPool != null) {
+            threadPool.shutdownNow();
+        }
+        if (postWritePool != null) {
+            postWritePool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.smarthito.cache.refresh;
+
+import com.smarthito.cache.init.SpringCacheRedisPlusProperties;
+import com.smarthito.cache.script.LuaScripts;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.zset.DefaultTuple;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按到期时间定时刷新缓存，用于配置了scheduled的缓存
+ * 每个缓存的待刷新key保存在redis的有序集合中，分数为刷新时间(毫秒时间戳)；
+ * 所有节点定时领取到期的key，领取时在同一个脚本中把分数改为租约到期时间，其他节点不会重复领取，
+ * 领取的节点异常退出时租约到期后重新被领取；刷新写入时分数更新为下一次的刷新时间，刷新没有写入时删除
+ * <p>
+ * 读取时只在本地记录被读取的key，领取前批量写入另一个有序集合(分数为最后读取时间)；
+ * 到期时超过空闲时间没有读取的key不再刷新，直接从刷新计划中删除，等待自然过期，刷新计划不会无限增长
+ *
+ * @author yaojunguang
+ */
+@Slf4j
+public class RefreshScheduler implements DisposableBean {
+
+    private static final String THREAD_NAME_PREFIX = "cache-refresh-scheduler-";
+
+    /**
+     * 有序集合的key后缀，#不会出现在缓存名称中，不会和缓存key冲突；缓存名称作为hash tag，集群时两个集合在同一个slot
+     */
+    private static final String SCHEDULE_KEY_SUFFIX = "}#refresh_schedule";
+
+    private static final String ACCESS_KEY_SUFFIX = "}#refresh_access";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final SpringCacheRedisPlusProperties.Scheduler properties;
+
+    /**
+     * 缓存名称 -> 登记信息
+     */
+    private final Map<String, Registration> registrations = new ConcurrentHashMap<>();
+
+    /**
+     * 缓存名称 -> 上次领取后本节点读取过的key
+     */
+    private final Map<String, Set<String>> touchedKeys = new ConcurrentHashMap<>();
+
+    private volatile ScheduledThreadPoolExecutor executor;
+
+    public RefreshScheduler(RedisTemplate<String, Object> redisTemplate, SpringCacheRedisPlusProperties.Scheduler properties) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+    }
+
+    /**
+     * 领取到期key后的处理
+     */
+    @FunctionalInterface
+    public interface Handler {
+
+        /**
+         * 刷新领取到的key，刷新结束后需要调用 {@link #complete(String, String, long)}
+         *
+         * @param cacheKeys redis中的缓存key
+         * @param lease     租约到期时间
+         * @return 是否全部提交，执行器已满时释放没有提交的key并返回false，本轮不再领取
+         */
+        boolean refresh(List<String> cacheKeys, long lease);
+    }
+
+    private static class Registration {
+
+        private final Handler handler;
+
+        private final long idleMillis;
+
+        private Registration(Handler handler, long idleMillis) {
+            this.handler = handler;
+            this.idleMillis = idleMillis;
+        }
+    }
+
+    /**
+     * 登记缓存，第一次登记时开始定时领取
+     *
+     * @param cacheName      缓存名称
+     * @param refreshSeconds 缓存的刷新周期(秒)，没有配置空闲时间时作为空闲时间
+     * @param handler        处理
+     */
+    public void register(String cacheName, long refreshSeconds, Handler handler) {
+        long idleSeconds = properties.getIdleSeconds() > 0 ? properties.getIdleSeconds() : Math.max(refreshSeconds, 1);
+        registrations.put(cacheName, new Registration(handler, TimeUnit.SECONDS.toMillis(idleSeconds)));
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(THREAD_NAME_PREFIX);
+                    threadFactory.setDaemon(true);
+                    ScheduledThreadPoolExecutor scheduled = new ScheduledThreadPoolExecutor(1, threadFactory);
+                    long interval = properties.getPollMillis();
+                    scheduled.scheduleWithFixedDelay(this::poll, interval, interval, TimeUnit.MILLISECONDS);
+                    executor = scheduled;
+                    log.info("缓存定时刷新已启动，间隔{}ms，每批{}个", interval, properties.getBatchSize());
+                }
+            }
+        }
+    }
+
+    /**
+     * 写入后登记下一次的刷新时间
+     *
+     * @param cacheName   缓存名称
+     * @param cacheKeyStr redis中的缓存key
+     * @param refreshAt   刷新时间，毫秒时间戳
+     */
+    public void schedule(String cacheName, String cacheKeyStr, long refreshAt) {
+        byte[] key = getScheduleKey(cacheName);
+        byte[] member = cacheKeyStr.getBytes(StandardCharsets.UTF_8);
+        redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.zSetCommands().zAdd(key, refreshAt, member));
+    }
+
+    /**
+     * 批量写入后登记下一次的刷新时间，一个命令完成
+     *
+     * @param cacheName  缓存名称
+     * @param refreshAts redis中的缓存key -> 刷新时间，毫秒时间戳
+     */
+    public void schedule(String cacheName, Map<String, Long> refreshAts) {
+        if (refreshAts.isEmpty()) {
+            return;
+        }
+        byte[] key = getScheduleKey(cacheName);
+        Set<Tuple> tuples = new LinkedHashSet<>(refreshAts.size() * 4 / 3 + 1);
+        refreshAts.forEach((cacheKeyStr, refreshAt) -> tuples.add(new DefaultTuple(cacheKeyStr.getBytes(StandardCharsets.UTF_8),
+                refreshAt.doubleValue())));
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.zSetCommands().zAdd(key, tuples));
+    }
+
+    /**
+     * 读取时记录，只在本地记录，下一次领取前批量写入redis
+     *
+     * @param cacheName   缓存名称
+     * @param cacheKeyStr redis中的缓存key
+     */
+    public void touch(String cacheName, String cacheKeyStr) {
+        touchedKeys.computeIfAbsent(cacheName, key -> ConcurrentHashMap.newKeySet()).add(cacheKeyStr);
+    }
+
+    /**
+     * 缓存删除后不再刷新
+     *
+     * @param cacheName   缓存名称
+     * @param cacheKeyStr redis中的缓存key
+     */
+    public void cancel(String cacheName, String cacheKeyStr) {
+        byte[] key = getScheduleKey(cacheName);
+        byte[] accessKey = getAccessKey(cacheName);
+        byte[] member = cacheKeyStr.getBytes(StandardCharsets.UTF_8);
+        redisTemplate.execute((RedisCallback<Long>) connection -> {
+            connection.zSetCommands().zRem(accessKey, member);
+            return connection.zSetCommands().zRem(key, member);
+        });
+    }
+
+    /**
+     * 缓存清空后不再刷新
+     *
+     * @param cacheName 缓存名称
+     */
+    public void clear(String cacheName) {
+        byte[] key = getScheduleKey(cacheName);
+        byte[] accessKey = getAccessKey(cacheName);
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.keyCommands().del(key, accessKey));
+    }
+
+    /**
+     * 刷新结束，刷新没有写入(分数仍然是租约)时删除，写入时已经登记了下一次的刷新时间
+     *
+     * @param cacheName   缓存名称
+     * @param cacheKeyStr redis中的缓存key
+     * @param lease       领取时的租约到期时间
+     */
+    public void complete(String cacheName, String cacheKeyStr, long lease) {
+        byte[] key = getScheduleKey(cacheName);
+        byte[] member = cacheKeyStr.getBytes(StandardCharsets.UTF_8);
+        byte[] accessKey = getAccessKey(cacheName);
+        redisTemplate.execute((RedisCallback<Long>) connection -> LuaScripts.SCHEDULE_COMPLETE.eval(connection.scriptingCommands(),
+                ReturnType.INTEGER, 2, key, accessKey, member, Long.toString(lease).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 释放没有提交刷新的key，分数改为当前时间，下一轮重新领取，不需要等待租约到期
+     *
+     * @param cacheName 缓存名称
+     * @param cacheKeys redis中的缓存key
+     */
+    public void release(String cacheName, List<String> cacheKeys) {
+        if (cacheKeys.isEmpty()) {
+            return;
+        }
+        byte[] key = getScheduleKey(cacheName);
+        long now = System.currentTimeMillis();
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            for (String cacheKeyStr : cacheKeys) {
+                connection.zSetCommands().zAdd(key, now, cacheKeyStr.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+    }
+
+    private void poll() {
+        registrations.forEach((cacheName, registration) -> {
+            try {
+                flushTouched(cacheName);
+                List<String> cacheKeys = new ArrayList<>();
+                long due;
+                do {
+                    long lease = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(properties.getLeaseSeconds());
+                    cacheKeys.clear();
+                    due = claim(cacheName, lease, registration.idleMillis, cacheKeys);
+                    if (!cacheKeys.isEmpty() && !registration.handler.refresh(cacheKeys, lease)) {
+                        break;
+                    }
+                } while (due >= properties.getBatchSize());
+            } catch (Exception e) {
+                log.info("领取缓存{}的到期刷新失败：{}", cacheName, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 把本地记录的读取写入redis，每批最多batchSize个
+     *
+     * @param cacheName 缓存名称
+     */
+    private void flushTouched(String cacheName) {
+        Set<String> touched = touchedKeys.get(cacheName);
+        if (touched == null || touched.isEmpty()) {
+            return;
+        }
+        byte[] key = getScheduleKey(cacheName);
+        byte[] accessKey = getAccessKey(cacheName);
+        byte[] now = Long.toString(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8);
+        List<byte[]> keysAndArgs = new ArrayList<>(properties.getBatchSize() + 3);
+        Iterator<String> iterator = touched.iterator();
+        while (iterator.hasNext()) {
+            if (keysAndArgs.isEmpty()) {
+                keysAndArgs.add(key);
+                keysAndArgs.add(accessKey);
+                keysAndArgs.add(now);
+            }
+            keysAndArgs.add(iterator.next().getBytes(StandardCharsets.UTF_8));
+            // 迭代中新增的key可能在这一轮写入，也可能留到下一轮，不会丢失
+            iterator.remove();
+            if (keysAndArgs.size() - 3 >= properties.getBatchSize() || !iterator.hasNext()) {
+                byte[][] batch = keysAndArgs.toArray(new byte[0][]);
+                redisTemplate.execute((RedisCallback<Long>) connection -> LuaScripts.SCHEDULE_TOUCH.eval(connection.scriptingCommands(),
+                        ReturnType.INTEGER, 2, batch));
+                keysAndArgs.clear();
+            }
+        }
+    }
+
+    /**
+     * 领取到期的key，到期但空闲时间内没有读取的key从刷新计划中删除
+     *
+     * @param cacheName  缓存名称
+     * @param lease      租约到期时间
+     * @param idleMillis 空闲时间
+     * @param cacheKeys  领取到的redis中的缓存key
+     * @return 到期的个数，包括删除的key
+     */
+    private long claim(String cacheName, long lease, long idleMillis, List<String> cacheKeys) {
+        byte[] key = getScheduleKey(cacheName);
+        byte[] accessKey = getAccessKey(cacheName);
+        long current = System.currentTimeMillis();
+        byte[] now = Long.toString(current).getBytes(StandardCharsets.UTF_8);
+        byte[] limit = Integer.toString(properties.getBatchSize()).getBytes(StandardCharsets.UTF_8);
+        byte[] leaseBytes = Long.toString(lease).getBytes(StandardCharsets.UTF_8);
+        byte[] accessedAfter = Long.toString(current - idleMillis).getBytes(StandardCharsets.UTF_8);
+        List<Object> result = redisTemplate.execute((RedisCallback<List<Object>>) connection -> LuaScripts.SCHEDULE_CLAIM.eval(
+                connection.scriptingCommands(), ReturnType.MULTI, 2, key, accessKey, now, limit, leaseBytes, accessedAfter));
+        if (result == null || result.isEmpty()) {
+            return 0;
+        }
+        for (Object member : result.subList(1, result.size())) {
+            if (member instanceof byte[]) {
+                cacheKeys.add(new String((byte[]) member, StandardCharsets.UTF_8));
+            }
+        }
+        return result.get(0) instanceof Long ? (Long) result.get(0) : cacheKeys.size();
+    }
+
+    private byte[] getScheduleKey(String cacheName) {
+        return ("{" + cacheName + SCHEDULE_KEY_SUFFIX).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] getAccessKey(String cacheName) {
+        return ("{" + cacheName + ACCESS_KEY_SUFFIX).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
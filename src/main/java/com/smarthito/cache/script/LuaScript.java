@@ -0,0 +1,113 @@
+package com.smarthito.cache.script;
+
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.connection.ReturnType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 服务端执行的lua脚本
+ * 通过EVALSHA按摘要执行，服务端没有缓存脚本(NOSCRIPT)时改用EVAL，EVAL会同时把脚本缓存到服务端
+ *
+ * @author yaojunguang
+ */
+public final class LuaScript {
+
+    private static final String NO_SCRIPT = "NOSCRIPT";
+
+    private final String name;
+
+    private final byte[] source;
+
+    /**
+     * 脚本的sha1摘要，十六进制
+     */
+    private final byte[] sha1;
+
+    /**
+     * @param name   名称，用于日志
+     * @param source 脚本
+     */
+    public LuaScript(String name, String source) {
+        this.name = name;
+        this.source = source.getBytes(StandardCharsets.UTF_8);
+        this.sha1 = sha1(this.source);
+    }
+
+    private static byte[] sha1(byte[] source) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(source)).getBytes(StandardCharsets.US_ASCII);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("不支持SHA-1", e);
+        }
+    }
+
+    /**
+     * 执行脚本，不能在管道或事务中使用
+     *
+     * @param commands    脚本命令
+     * @param returnType  返回类型
+     * @param numKeys     key的个数
+     * @param keysAndArgs key和参数
+     * @param <T>         返回类型
+     * @return 执行结果
+     */
+    public <T> T eval(RedisScriptingCommands commands, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        try {
+            return commands.evalSha(sha1, returnType, numKeys, keysAndArgs);
+        } catch (RuntimeException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            return commands.eval(source, returnType, numKeys, keysAndArgs);
+        }
+    }
+
+    /**
+     * 把脚本缓存到服务端
+     *
+     * @param commands 脚本命令
+     */
+    public void load(RedisScriptingCommands commands) {
+        commands.scriptLoad(source);
+    }
+
+    /**
+     * 是否是服务端没有缓存脚本的错误，响应式执行时按这个判断是否改用EVAL
+     *
+     * @param e 异常
+     * @return 是否是NOSCRIPT
+     */
+    public static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains(NO_SCRIPT)) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSha1() {
+        return new String(sha1, StandardCharsets.US_ASCII);
+    }
+
+    public ByteBuffer getSource() {
+        return ByteBuffer.wrap(source).asReadOnlyBuffer();
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + getSha1() + ")";
+    }
+}
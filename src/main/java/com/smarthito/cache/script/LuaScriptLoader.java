@@ -0,0 +1,37 @@
+package com.smarthito.cache.script;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * 启动后把所有脚本缓存到服务端，之后只按摘要执行
+ * 加载失败不影响启动，执行时遇到NOSCRIPT会自动改用EVAL
+ *
+ * @author yaojunguang
+ */
+@Slf4j
+public class LuaScriptLoader implements SmartInitializingSingleton {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    public LuaScriptLoader(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                for (LuaScript script : LuaScripts.ALL) {
+                    script.load(connection.scriptingCommands());
+                }
+                return null;
+            });
+            log.info("lua脚本加载完成：{}", LuaScripts.ALL);
+        } catch (Exception e) {
+            log.info("lua脚本加载失败，执行时加载：" + e.getMessage(), e);
+        }
+    }
+}
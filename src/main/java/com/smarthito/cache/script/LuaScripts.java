@@ -0,0 +1,124 @@
+package com.smarthito.cache.script;
+
+import com.smarthito.cache.lock.RedisLock;
+
+import java.util.List;
+
+/**
+ * 本库使用的所有lua脚本，启动时预先缓存到服务端
+ * 新增的原子操作在这里登记脚本
+ *
+ * @author yaojunguang
+ */
+public final class LuaScripts {
+
+    private LuaScripts() {
+    }
+
+    /**
+     * 一次往返同时获取缓存值和剩余有效时间(毫秒)
+     */
+    public static final LuaScript GET_WITH_TTL = new LuaScript("getWithTtl",
+            "return {redis.call('get', KEYS[1]), redis.call('pttl', KEYS[1])}");
+
+    /**
+     * 批量获取缓存值和剩余有效时间，返回 值1, 剩余时间1, 值2, 剩余时间2...
+     */
+    public static final LuaScript MGET_WITH_TTL = new LuaScript("mgetWithTtl", "local result = {} " +
+            "for i, key in ipairs(KEYS) do " +
+            "    result[2 * i - 1] = redis.call('get', key) " +
+            "    result[2 * i] = redis.call('pttl', key) " +
+            "end " +
+            "return result");
+
+    /**
+     * 批量写入，ARGV前半部分为值，后半部分为有效时间(毫秒，小于等于0不过期)
+     */
+    public static final LuaScript MSET_WITH_TTL = new LuaScript("msetWithTtl", "local n = #KEYS " +
+            "for i = 1, n do " +
+            "    local ttl = tonumber(ARGV[n + i]) " +
+            "    if ttl > 0 then " +
+            "        redis.call('set', KEYS[i], ARGV[i], 'PX', ttl) " +
+            "    else " +
+            "        redis.call('set', KEYS[i], ARGV[i]) " +
+            "    end " +
+            "end " +
+            "return n");
+
+    /**
+     * 解锁，值相同时才删除
+     */
+    public static final LuaScript UNLOCK = new LuaScript("unlock", RedisLock.UNLOCK_LUA);
+
+    /**
+     * 解锁并发布释放通知，ARGV[2]为通知频道
+     */
+    public static final LuaScript UNLOCK_PUBLISH = new LuaScript("unlockPublish", "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "    redis.call('del', KEYS[1]) " +
+            "    redis.call('publish', ARGV[2], KEYS[1]) " +
+            "    return 1 " +
+            "else " +
+            "    return 0 " +
+            "end");
+
+    /**
+     * 锁续期，值相同时才续期，ARGV[2]为有效时间(毫秒)
+     */
+    public static final LuaScript RENEW = new LuaScript("renew", "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "    return redis.call('pexpire', KEYS[1], ARGV[2]) " +
+            "else " +
+            "    return 0 " +
+            "end");
+
+    /**
+     * 领取到期的定时刷新，KEYS[1]为刷新计划，KEYS[2]为最后读取时间；
+     * ARGV[1]为当前时间，ARGV[2]为最多领取个数，ARGV[3]为租约到期时间，ARGV[4]为最早的读取时间；
+     * 在此之后读取过的key分数改为租约到期时间并返回，没有读取过的从刷新计划中删除；
+     * 返回值第一个元素是到期的个数，之后是领取到的key
+     */
+    public static final LuaScript SCHEDULE_CLAIM = new LuaScript("scheduleClaim",
+            "local due = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+            "local claimed = {#due} " +
+            "for i, member in ipairs(due) do " +
+            "    local accessed = redis.call('zscore', KEYS[2], member) " +
+            "    if accessed and tonumber(accessed) >= tonumber(ARGV[4]) then " +
+            "        redis.call('zadd', KEYS[1], ARGV[3], member) " +
+            "        claimed[#claimed + 1] = member " +
+            "    else " +
+            "        redis.call('zrem', KEYS[1], member) " +
+            "        redis.call('zrem', KEYS[2], member) " +
+            "    end " +
+            "end " +
+            "return claimed");
+
+    /**
+     * 定时刷新结束，分数仍然是领取时的租约(没有重新登记)时才删除，KEYS[1]为刷新计划，KEYS[2]为最后读取时间，
+     * ARGV[1]为缓存key，ARGV[2]为租约到期时间
+     */
+    public static final LuaScript SCHEDULE_COMPLETE = new LuaScript("scheduleComplete",
+            "if tonumber(redis.call('zscore', KEYS[1], ARGV[1])) == tonumber(ARGV[2]) then " +
+            "    redis.call('zrem', KEYS[2], ARGV[1]) " +
+            "    return redis.call('zrem', KEYS[1], ARGV[1]) " +
+            "else " +
+            "    return 0 " +
+            "end");
+
+    /**
+     * 记录最后读取时间，只记录仍在刷新计划中的key，KEYS[1]为刷新计划，KEYS[2]为最后读取时间，ARGV[1]为读取时间，之后是缓存key
+     */
+    public static final LuaScript SCHEDULE_TOUCH = new LuaScript("scheduleTouch",
+            "local count = 0 " +
+            "for i = 2, #ARGV do " +
+            "    if redis.call('zscore', KEYS[1], ARGV[i]) then " +
+            "        redis.call('zadd', KEYS[2], ARGV[1], ARGV[i]) " +
+            "        count = count + 1 " +
+            "    end " +
+            "end " +
+            "return count");
+
+    /**
+     * 所有脚本
+     */
+    public static final List<LuaScript> ALL = List.of(GET_WITH_TTL, MGET_WITH_TTL, MSET_WITH_TTL, UNLOCK, UNLOCK_PUBLISH, RENEW,
+            SCHEDULE_CLAIM, SCHEDULE_COMPLETE, SCHEDULE_TOUCH);
+}
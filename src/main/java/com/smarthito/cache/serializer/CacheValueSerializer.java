@@ -0,0 +1,122 @@
+package com.smarthito.cache.serializer;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 缓存值序列化器
+ * 按缓存配置的格式写入，读取时按数据头识别格式，切换格式期间新旧数据都可以读取
+ * 开启压缩时超过阈值的数据压缩后写入，读取时识别压缩数据；没有开启压缩时不识别，
+ * 自定义序列化器写入的数据以压缩标记开头时不会被误认为压缩数据。关闭压缩后旧数据过期前可以开启readCompressed继续读取
+ *
+ * @author yaojunguang
+ */
+public class CacheValueSerializer implements RedisSerializer<Object> {
+
+    private final RedisSerializer<Object> writer;
+
+    private final RedisSerializer<Object> jsonSerializer;
+
+    private final SmileRedisSerializer smileSerializer;
+
+    private final CompressionCodec compression;
+
+    /**
+     * 压缩阈值(字节)，小于0不压缩
+     */
+    private final int compressThreshold;
+
+    /**
+     * 没有开启压缩时是否也识别压缩数据，关闭压缩的迁移期间使用
+     */
+    private final boolean readCompressed;
+
+    /**
+     * @param writer          写入使用的序列化器
+     * @param jsonSerializer  json格式
+     * @param smileSerializer smile格式
+     * @param compression     压缩
+     */
+    public CacheValueSerializer(RedisSerializer<Object> writer, RedisSerializer<Object> jsonSerializer, SmileRedisSerializer smileSerializer,
+                                CompressionCodec compression) {
+        this(writer, jsonSerializer, smileSerializer, compression, -1, false);
+    }
+
+    private CacheValueSerializer(RedisSerializer<Object> writer, RedisSerializer<Object> jsonSerializer, SmileRedisSerializer smileSerializer,
+                                 CompressionCodec compression, int compressThreshold, boolean readCompressed) {
+        this.writer = writer;
+        this.jsonSerializer = jsonSerializer;
+        this.smileSerializer = smileSerializer;
+        this.compression = compression;
+        this.compressThreshold = compressThreshold;
+        this.readCompressed = readCompressed;
+    }
+
+    /**
+     * 使用另一种格式写入，读取方式不变
+     *
+     * @param writer 写入使用的序列化器
+     * @return 序列化器
+     */
+    public CacheValueSerializer withWriter(RedisSerializer<Object> writer) {
+        return new CacheValueSerializer(writer, jsonSerializer, smileSerializer, compression, compressThreshold, readCompressed);
+    }
+
+    /**
+     * 使用自定义的序列化器读写，smile数据仍然可以读取
+     *
+     * @param serializer 序列化器
+     * @return 序列化器
+     */
+    public CacheValueSerializer withSerializer(RedisSerializer<Object> serializer) {
+        return new CacheValueSerializer(serializer, serializer, smileSerializer, compression, compressThreshold, readCompressed);
+    }
+
+    /**
+     * 超过阈值的数据压缩后写入
+     *
+     * @param compressThreshold 压缩阈值(字节)
+     * @return 序列化器
+     */
+    public CacheValueSerializer withCompression(int compressThreshold) {
+        return new CacheValueSerializer(writer, jsonSerializer, smileSerializer, compression, compressThreshold, readCompressed);
+    }
+
+    /**
+     * 没有开启压缩时也识别压缩数据，关闭压缩后旧的压缩数据过期前使用
+     *
+     * @param readCompressed 是否识别压缩数据
+     * @return 序列化器
+     */
+    public CacheValueSerializer withReadCompressed(boolean readCompressed) {
+        return new CacheValueSerializer(writer, jsonSerializer, smileSerializer, compression, compressThreshold, readCompressed);
+    }
+
+    public SmileRedisSerializer getSmileSerializer() {
+        return smileSerializer;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        byte[] bytes = writer.serialize(value);
+        if (compressThreshold < 0 || bytes == null) {
+            return bytes;
+        }
+        // 以压缩标记开头的数据总是压缩后写入，读取时不会被误认为压缩数据
+        if (CompressionCodec.isCompressed(bytes)) {
+            return compression.compress(bytes, true);
+        }
+        return bytes.length >= compressThreshold ? compression.compress(bytes) : bytes;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if ((compressThreshold >= 0 || readCompressed) && CompressionCodec.isCompressed(bytes)) {
+            bytes = compression.decompress(bytes);
+        }
+        return SmileRedisSerializer.isSmile(bytes) ? smileSerializer.deserialize(bytes) : jsonSerializer.deserialize(bytes);
+    }
+}
@@ -0,0 +1,110 @@
+package com.smarthito.cache.serializer;
+
+import com.fasterxml.jackson.databind.DatabindContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.impl.ClassNameIdResolver;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 类型信息使用短id代替类名
+ * 登记过的类写入 #id，没有登记的仍然写类名，读取时两种都支持
+ * <p>
+ * 内置id和配置的id一经使用就不能修改含义，否则已有的缓存无法读取
+ *
+ * @author yaojunguang
+ */
+public class ClassIdTypeResolverBuilder extends ObjectMapper.DefaultTypeResolverBuilder {
+
+    private static final char ID_PREFIX = '#';
+
+    /**
+     * 内置的常用类型id
+     */
+    private static final Map<String, String> BUILT_IN_IDS = Map.of(
+            "a", "java.util.ArrayList",
+            "m", "java.util.HashMap",
+            "lm", "java.util.LinkedHashMap",
+            "tm", "java.util.TreeMap",
+            "s", "java.util.HashSet",
+            "ls", "java.util.LinkedHashSet",
+            "d", "java.util.Date",
+            "ts", "java.sql.Timestamp",
+            "bd", "java.math.BigDecimal",
+            "bi", "java.math.BigInteger");
+
+    private final Map<String, String> idToClassName = new HashMap<>();
+
+    private final Map<String, String> classNameToId = new HashMap<>();
+
+    /**
+     * @param classIds 配置的类型id，id -> 类名
+     */
+    public ClassIdTypeResolverBuilder(PolymorphicTypeValidator subtypeValidator, Map<String, String> classIds) {
+        super(ObjectMapper.DefaultTyping.NON_FINAL, subtypeValidator);
+        BUILT_IN_IDS.forEach(this::register);
+        if (classIds != null) {
+            classIds.forEach(this::register);
+        }
+    }
+
+    private void register(String id, String className) {
+        String registered = idToClassName.putIfAbsent(id, className);
+        if (registered != null && !registered.equals(className)) {
+            throw new IllegalArgumentException(String.format("类型id[%s]已被%s使用", id, registered));
+        }
+        registered = classNameToId.putIfAbsent(className, id);
+        if (registered != null && !registered.equals(id)) {
+            throw new IllegalArgumentException(String.format("类型%s已登记为id[%s]", className, registered));
+        }
+    }
+
+    @Override
+    protected TypeIdResolver idResolver(MapperConfig<?> config, JavaType baseType, PolymorphicTypeValidator subtypeValidator,
+                                        Collection<NamedType> subtypes, boolean forSer, boolean forDeser) {
+        return new ClassIdResolver(baseType, config.getTypeFactory(), subtypeValidator);
+    }
+
+    private class ClassIdResolver extends ClassNameIdResolver {
+
+        ClassIdResolver(JavaType baseType, TypeFactory typeFactory, PolymorphicTypeValidator subtypeValidator) {
+            super(baseType, typeFactory, subtypeValidator);
+        }
+
+        @Override
+        public String idFromValue(Object value) {
+            return toId(super.idFromValue(value));
+        }
+
+        @Override
+        public String idFromValueAndType(Object value, Class<?> type) {
+            return toId(super.idFromValueAndType(value, type));
+        }
+
+        @Override
+        public JavaType typeFromId(DatabindContext context, String id) throws IOException {
+            if (id.length() > 1 && id.charAt(0) == ID_PREFIX) {
+                String className = idToClassName.get(id.substring(1));
+                if (className == null) {
+                    throw new IllegalArgumentException(String.format("未登记的类型id[%s]", id));
+                }
+                id = className;
+            }
+            return super.typeFromId(context, id);
+        }
+
+        private String toId(String className) {
+            String id = classNameToId.get(className);
+            return id == null ? className : ID_PREFIX + id;
+        }
+    }
+}
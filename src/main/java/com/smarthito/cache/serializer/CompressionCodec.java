@@ -0,0 +1,162 @@
+package com.smarthito.cache.serializer;
+
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 缓存值压缩
+ * 使用zlib格式，可以配置预置字典，适合大量相似的小json
+ * <p>
+ * 格式：1字节标记(2) + 4字节原始长度 + zlib数据
+ * json、smile都不会以2开头，没有压缩的数据仍然可以读取；其他格式以2开头时总是压缩后写入
+ * <p>
+ * Deflater/Inflater占用本地内存，放在有界的池中复用，池满时立即end()释放；
+ * 不使用ThreadLocal，刷新使用虚拟线程时不会每个任务留下一个等待GC回收的压缩器
+ *
+ * @author yaojunguang
+ */
+public class CompressionCodec {
+
+    /**
+     * 压缩标记
+     */
+    public static final byte MARKER = 2;
+
+    private static final int HEADER_LENGTH = 1 + Integer.BYTES;
+
+    /**
+     * zlib预置字典的最大长度
+     */
+    private static final int MAX_DICTIONARY_LENGTH = 32 * 1024;
+
+    private final int level;
+
+    private final byte[] dictionary;
+
+    private final BlockingQueue<Deflater> deflaters;
+
+    private final BlockingQueue<Inflater> inflaters;
+
+    /**
+     * @param level      压缩级别，0-9
+     * @param dictionary 预置字典，可以为null；超过32K时只使用最后32K
+     */
+    public CompressionCodec(int level, byte[] dictionary) {
+        this.level = level;
+        this.dictionary = dictionary == null || dictionary.length == 0 ? null
+                : dictionary.length > MAX_DICTIONARY_LENGTH ? Arrays.copyOfRange(dictionary, dictionary.length - MAX_DICTIONARY_LENGTH, dictionary.length)
+                : dictionary;
+        int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+        this.deflaters = new ArrayBlockingQueue<>(poolSize);
+        this.inflaters = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    /**
+     * 是否是压缩格式
+     *
+     * @param bytes 数据
+     * @return 是否是压缩格式
+     */
+    public static boolean isCompressed(byte[] bytes) {
+        return bytes.length > HEADER_LENGTH && bytes[0] == MARKER;
+    }
+
+    /**
+     * 压缩，压缩后没有变小时返回原数据
+     *
+     * @param bytes 数据
+     * @return 压缩后的数据
+     */
+    public byte[] compress(byte[] bytes) {
+        return compress(bytes, false);
+    }
+
+    /**
+     * 压缩
+     *
+     * @param bytes 数据
+     * @param force 压缩后没有变小时是否仍然返回压缩数据
+     * @return 压缩后的数据
+     */
+    public byte[] compress(byte[] bytes, boolean force) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        }
+        try {
+            deflater.reset();
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_LENGTH + bytes.length / 2);
+            out.write(MARKER);
+            out.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+            byte[] buffer = new byte[Math.min(bytes.length, 8192) + 64];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+                if (!force && out.size() >= bytes.length) {
+                    return bytes;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            if (!deflaters.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * 解压
+     *
+     * @param bytes 压缩格式的数据
+     * @return 原数据
+     */
+    public byte[] decompress(byte[] bytes) {
+        int length = ByteBuffer.wrap(bytes, 1, Integer.BYTES).getInt();
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        inflater.reset();
+        inflater.setInput(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+        byte[] result = new byte[length];
+        try {
+            int offset = 0;
+            while (offset < length) {
+                int count = inflater.inflate(result, offset, length - offset);
+                if (count == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null) {
+                            throw new SerializationException("压缩数据需要预置字典，但是没有配置字典");
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.finished() || inflater.needsInput()) {
+                        break;
+                    }
+                }
+                offset += count;
+            }
+            if (offset != length) {
+                throw new SerializationException("压缩数据不完整");
+            }
+        } catch (DataFormatException | IllegalArgumentException e) {
+            throw new SerializationException("压缩数据格式错误：" + e.getMessage(), e);
+        } finally {
+            if (!inflaters.offer(inflater)) {
+                inflater.end();
+            }
+        }
+        return result;
+    }
+}
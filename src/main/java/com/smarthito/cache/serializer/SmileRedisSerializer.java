@@ -0,0 +1,73 @@
+package com.smarthito.cache.serializer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.smarthito.cache.utils.ObjectMapperUtils;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * smile二进制格式的缓存值序列化器
+ * 与json格式使用相同的ObjectMapper配置，类型信息使用短id，重复的字段名和字符串只写一次
+ *
+ * @author yaojunguang
+ */
+public class SmileRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param classIds 类型id，id -> 类名
+     */
+    public SmileRedisSerializer(Map<String, String> classIds) {
+        SmileFactory factory = SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build();
+        this.objectMapper = ObjectMapperUtils.configure(new ObjectMapper(factory));
+        this.objectMapper.setDefaultTyping(new ClassIdTypeResolverBuilder(LaissezFaireSubTypeValidator.instance, classIds)
+                .init(JsonTypeInfo.Id.CLASS, null)
+                .inclusion(JsonTypeInfo.As.WRAPPER_ARRAY));
+    }
+
+    /**
+     * 是否是smile格式，smile数据以 :)\n 开头
+     *
+     * @param bytes 数据
+     * @return 是否是smile格式
+     */
+    public static boolean isSmile(byte[] bytes) {
+        return bytes.length >= 3 && bytes[0] == ':' && bytes[1] == ')' && bytes[2] == '\n';
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return EMPTY_ARRAY;
+        }
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new SerializationException("Could not write Smile: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(bytes, Object.class);
+        } catch (IOException e) {
+            throw new SerializationException("Could not read Smile: " + e.getMessage(), e);
+        }
+    }
+}
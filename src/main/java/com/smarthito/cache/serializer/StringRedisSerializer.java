@@ -1,7 +1,5 @@
 package com.smarthito.cache.serializer;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.util.Assert;
 
@@ -10,6 +8,9 @@ import java.nio.charset.StandardCharsets;
 
 /**
  * 必须重写序列化器，否则@Cacheable注解的key会报类型转换错误
+ * <p>
+ * 输出与之前"jackson转义为json字符串后去掉所有双引号"的结果逐字节相同：
+ * 双引号变为\，反斜杠变为\\，控制字符按json转义，其他字符原样输出
  *
  * @author yaojunguang
  */
@@ -17,11 +18,11 @@ public class StringRedisSerializer implements RedisSerializer<String> {
 
     private final Charset charset;
 
-    private final static String TARGET = "\"";
+    private final static String SIMPLE_KEY = "SimpleKey [";
 
-    private final static String REPLACEMENT = "";
+    private final static String EMPTY_KEY = "{}";
 
-    private final static String SIMPLE_KEY = "SimpleKey [";
+    private final static char[] HEX_CHARS = "0123456789ABCDEF".toCharArray();
 
     public StringRedisSerializer() {
         this(StandardCharsets.UTF_8);
@@ -42,20 +43,75 @@ public class StringRedisSerializer implements RedisSerializer<String> {
         if (object == null) {
             return null;
         }
+        int length = object.length();
+        boolean emptyKey = false;
         //强制修改key为空的情况下的生成
         if (object.contains(SIMPLE_KEY)) {
-            int index = object.lastIndexOf(":");
+            int index = object.lastIndexOf(':');
             if (index > 0) {
-                object = object.substring(0, index + 1) + "{}";
+                length = index + 1;
+                emptyKey = true;
+            }
+        }
+        int escapeIndex = indexOfEscape(object, length);
+        if (escapeIndex < 0) {
+            if (!emptyKey) {
+                return object.getBytes(charset);
+            }
+            return new StringBuilder(length + EMPTY_KEY.length()).append(object, 0, length).append(EMPTY_KEY)
+                    .toString().getBytes(charset);
+        }
+        StringBuilder builder = new StringBuilder(length + 16).append(object, 0, escapeIndex);
+        for (int i = escapeIndex; i < length; i++) {
+            appendEscaped(builder, object.charAt(i));
+        }
+        if (emptyKey) {
+            builder.append(EMPTY_KEY);
+        }
+        return builder.toString().getBytes(charset);
+    }
+
+    private static int indexOfEscape(String object, int length) {
+        for (int i = 0; i < length; i++) {
+            char c = object.charAt(i);
+            if (c < 0x20 || c == '"' || c == '\\') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void appendEscaped(StringBuilder builder, char c) {
+        if (c >= 0x20) {
+            if (c == '"') {
+                // 转义后的\"去掉双引号只剩\
+                builder.append('\\');
+            } else if (c == '\\') {
+                builder.append('\\').append('\\');
+            } else {
+                builder.append(c);
             }
+            return;
         }
-        try {
-            String string = new ObjectMapper().writeValueAsString(object);
-            string = string.replace(TARGET, REPLACEMENT);
-            return string.getBytes(charset);
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
+        switch (c) {
+            case '\b':
+                builder.append("\\b");
+                break;
+            case '\t':
+                builder.append("\\t");
+                break;
+            case '\n':
+                builder.append("\\n");
+                break;
+            case '\f':
+                builder.append("\\f");
+                break;
+            case '\r':
+                builder.append("\\r");
+                break;
+            default:
+                builder.append("\\u00").append(HEX_CHARS[c >> 4]).append(HEX_CHARS[c & 0xF]);
+                break;
         }
-        return null;
     }
 }
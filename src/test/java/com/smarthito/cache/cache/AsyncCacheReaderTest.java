@@ -0,0 +1,97 @@
+package com.smarthito.cache.cache;
+
+import com.smarthito.cache.script.LuaScripts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.ReactiveScriptingCommands;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * 异步读取缓存值和剩余时间的测试，读取通过GET_WITH_TTL脚本完成
+ *
+ * @author yaojunguang
+ */
+class AsyncCacheReaderTest {
+
+    private static final byte[] KEY = "user:1".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] VALUE = "value".getBytes(StandardCharsets.UTF_8);
+
+    private final ReactiveScriptingCommands scriptingCommands = mock(ReactiveScriptingCommands.class);
+
+    private AsyncCacheReader reader;
+
+    @BeforeEach
+    void setUp() {
+        ReactiveRedisConnection connection = mock(ReactiveRedisConnection.class);
+        when(connection.scriptingCommands()).thenReturn(scriptingCommands);
+        when(connection.closeLater()).thenReturn(Mono.empty());
+        ReactiveRedisConnectionFactory connectionFactory = mock(ReactiveRedisConnectionFactory.class,
+                withSettings().extraInterfaces(RedisConnectionFactory.class));
+        when(connectionFactory.getReactiveConnection()).thenReturn(connection);
+        reader = AsyncCacheReader.create((RedisConnectionFactory) connectionFactory);
+    }
+
+    @Test
+    void readsValueAndTtlWithScript() {
+        when(scriptingCommands.evalSha(eq(LuaScripts.GET_WITH_TTL.getSha1()), eq(ReturnType.MULTI), eq(1), any(ByteBuffer[].class)))
+                .thenReturn(Flux.just(ByteBuffer.wrap(VALUE), 1500L));
+
+        List<Object> result = reader.getWithTtl(KEY).join();
+
+        assertThat(result).hasSize(2);
+        assertThat((byte[]) result.get(0)).isEqualTo(VALUE);
+        assertThat(result.get(1)).isEqualTo(1500L);
+    }
+
+    @Test
+    void returnsNullOnMiss() {
+        // 未命中时GET返回nil，响应式结果中只剩下PTTL
+        when(scriptingCommands.evalSha(eq(LuaScripts.GET_WITH_TTL.getSha1()), eq(ReturnType.MULTI), eq(1), any(ByteBuffer[].class)))
+                .thenReturn(Flux.just(-2L));
+
+        assertThat(reader.getWithTtl(KEY).join()).isNull();
+    }
+
+    @Test
+    void fallsBackToEvalWithoutCachedScript() {
+        when(scriptingCommands.evalSha(eq(LuaScripts.GET_WITH_TTL.getSha1()), eq(ReturnType.MULTI), eq(1), any(ByteBuffer[].class)))
+                .thenReturn(Flux.error(new RedisSystemException("NOSCRIPT No matching script", null)));
+        when(scriptingCommands.eval(any(ByteBuffer.class), eq(ReturnType.MULTI), eq(1), any(ByteBuffer[].class)))
+                .thenReturn(Flux.just(ByteBuffer.wrap(VALUE), -1L));
+
+        List<Object> result = reader.getWithTtl(KEY).join();
+
+        assertThat((byte[]) result.get(0)).isEqualTo(VALUE);
+        assertThat(result.get(1)).isEqualTo(-1L);
+    }
+
+    @Test
+    void doesNotFallBackOnOtherErrors() {
+        when(scriptingCommands.evalSha(eq(LuaScripts.GET_WITH_TTL.getSha1()), eq(ReturnType.MULTI), eq(1), any(ByteBuffer[].class)))
+                .thenReturn(Flux.error(new RedisSystemException("ERR connection lost", null)));
+
+        assertThat(reader.getWithTtl(KEY)).isCompletedExceptionally();
+        verify(scriptingCommands, never()).eval(any(ByteBuffer.class), any(ReturnType.class), anyInt(), any(ByteBuffer[].class));
+    }
+}
@@ -0,0 +1,127 @@
+package com.smarthito.cache.cache;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 缓存管理器按缓存参数创建缓存、启动时初始化缓存的测试，同名缓存的参数不一致时告警
+ *
+ * @author yaojunguang
+ */
+class CustomizedRedisCacheManagerTest {
+
+    private final RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
+            .entryTtl(Duration.ofSeconds(600))
+            .computePrefixWith(name -> name + ":");
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger(CustomizedRedisCacheManager.class);
+
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    @BeforeEach
+    void setUp() {
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(appender);
+    }
+
+    @Test
+    void createsCacheFromSpecName() {
+        CustomizedRedisCacheManager manager = createManager(true, Map.of());
+
+        Cache cache = manager.getCache("user#300#60");
+
+        assertThat(cache).isInstanceOf(CustomizedRedisCache.class);
+        assertThat(cache.getName()).isEqualTo("user");
+        assertThat(((CustomizedRedisCache) cache).getExpirationSecondTime()).isEqualTo(300);
+        // 同一个缓存名称只创建一次
+        assertThat(manager.getCache("user#300#60")).isSameAs(cache);
+        assertThat(manager.getCache("user")).isSameAs(cache);
+        assertThat(warnings()).isEmpty();
+        // 参数不一致的写法返回已经创建的缓存并告警
+        assertThat(manager.getCache("user#100")).isSameAs(cache);
+        assertThat(warnings()).singleElement().asString().contains("user#100");
+    }
+
+    @Test
+    void usesDefaultTtlWithoutSpec() {
+        CustomizedRedisCacheManager manager = createManager(true, Map.of());
+
+        Cache cache = manager.getCache("plain");
+
+        assertThat(cache).isInstanceOf(CustomizedRedisCache.class);
+        assertThat(((CustomizedRedisCache) cache).getExpirationSecondTime()).isEqualTo(600);
+    }
+
+    @Test
+    void initialCachesGoThroughCreateRedisCache() {
+        CustomizedRedisCacheManager manager = createManager(true, Map.of("init", config.entryTtl(Duration.ofSeconds(120))));
+
+        Cache cache = manager.getCache("init");
+
+        assertThat(cache).isInstanceOf(CustomizedRedisCache.class);
+        assertThat(((CustomizedRedisCache) cache).getExpirationSecondTime()).isEqualTo(120);
+        assertThat(manager.getCache("init#120")).isSameAs(cache);
+        assertThat(warnings()).isEmpty();
+        // 已经初始化的缓存不再按缓存参数重新创建，参数不生效并告警
+        assertThat(manager.getCache("init#999#30")).isSameAs(cache);
+        assertThat(((CustomizedRedisCache) cache).getExpirationSecondTime()).isEqualTo(120);
+        assertThat(warnings()).singleElement().asString().contains("init#999#30");
+    }
+
+    @Test
+    void cacheNamesMergeInitialAndRuntimeCaches() {
+        CustomizedRedisCacheManager manager = createManager(true, Map.of("init", config));
+
+        assertThat(manager.getCacheNames()).containsExactly("init");
+
+        manager.getCache("runtime#60");
+        manager.getCache("init#60");
+
+        assertThat(manager.getCacheNames()).containsExactly("init", "runtime");
+    }
+
+    @Test
+    void rejectsRuntimeCachesWhenCreationDisabled() {
+        CustomizedRedisCacheManager manager = createManager(false, Map.of("init", config));
+
+        assertThat(manager.getCache("other#60")).isNull();
+        assertThat(manager.getCache("other")).isNull();
+        assertThat(manager.getCache("init#60")).isInstanceOf(CustomizedRedisCache.class);
+        assertThat(manager.getCacheNames()).containsExactly("init");
+    }
+
+    private List<String> warnings() {
+        return appender.list.stream().filter(event -> event.getLevel() == Level.WARN).map(ILoggingEvent::getFormattedMessage).toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private CustomizedRedisCacheManager createManager(boolean allowRuntimeCacheCreation, Map<String, RedisCacheConfiguration> initialCaches) {
+        CustomizedRedisCacheManager manager = new CustomizedRedisCacheManager(mock(RedisCacheWriter.class), config, allowRuntimeCacheCreation,
+                initialCaches, mock(RedisTemplate.class), null, CacheStatisticsCollector.none());
+        manager.afterPropertiesSet();
+        return manager;
+    }
+}
@@ -0,0 +1,162 @@
+package com.smarthito.cache.cache;
+
+import com.smarthito.cache.refresh.RefreshScheduler;
+import com.smarthito.cache.utils.SpringContextUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 非sync的异步方法未命中后，在其他线程写入时注册方法信息；定时刷新的缓存批量写入后登记刷新时间；
+ * 只有开启信封的缓存识别信封
+ *
+ * @author yaojunguang
+ */
+class CustomizedRedisCacheTest {
+
+    private final RedisCacheWriter cacheWriter = mock(RedisCacheWriter.class);
+
+    private final CacheSupport cacheSupport = mock(CacheSupport.class);
+
+    private final Object targetBean = new Object();
+
+    private final Method targetMethod = Object.class.getMethods()[0];
+
+    private final RefreshScheduler scheduler = mock(RefreshScheduler.class);
+
+    private CustomizedRedisCacheManager manager;
+
+    private CustomizedRedisCache cache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBean(CacheSupport.class)).thenReturn(cacheSupport);
+        SpringContextUtils.setApplicationContext(applicationContext);
+        when(cacheWriter.supportsAsyncRetrieve()).thenReturn(true);
+        when(cacheWriter.retrieve(eq("user"), any(byte[].class))).thenReturn(CompletableFuture.completedFuture(null));
+
+        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
+                .entryTtl(Duration.ofSeconds(600))
+                .computePrefixWith(name -> name + ":");
+        manager = new CustomizedRedisCacheManager(cacheWriter, config, true, Map.of(),
+                mock(RedisTemplate.class), null, CacheStatisticsCollector.none());
+        ReflectionTestUtils.setField(manager, "refreshScheduler", scheduler);
+        manager.afterPropertiesSet();
+        cache = (CustomizedRedisCache) manager.getCache("user#60");
+    }
+
+    @AfterEach
+    void tearDown() {
+        SpringContextUtils.setApplicationContext(null);
+    }
+
+    @Test
+    void registersInvocationWhenPutCompletesOnAnotherThread() {
+        CacheInvocationContext context = newContext("user#60");
+        CacheInvocationContext previous = CacheInvocationContext.push(context);
+        try {
+            cache.retrieve("1").join();
+        } finally {
+            CacheInvocationContext.restore(previous);
+        }
+
+        // spring在方法返回的结果完成后写入，此时不在切面的线程中
+        CompletableFuture.runAsync(() -> cache.put("1", "value")).join();
+
+        verify(cacheSupport).registerInvocation(targetBean, targetMethod, context.getParameterTypes(), context.getArguments(), cache, "1");
+    }
+
+    @Test
+    void ignoresContextOfOtherCaches() {
+        CacheInvocationContext previous = CacheInvocationContext.push(newContext("order#60"));
+        try {
+            cache.retrieve("1").join();
+        } finally {
+            CacheInvocationContext.restore(previous);
+        }
+
+        CompletableFuture.runAsync(() -> cache.put("1", "value")).join();
+
+        verify(cacheSupport, never()).registerInvocation(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void registersPendingInvocationOnlyOnce() {
+        CacheInvocationContext previous = CacheInvocationContext.push(newContext("user#60"));
+        try {
+            cache.retrieve("1").join();
+        } finally {
+            CacheInvocationContext.restore(previous);
+        }
+
+        CompletableFuture.runAsync(() -> cache.put("1", "value")).join();
+        CompletableFuture.runAsync(() -> cache.put("1", "other")).join();
+
+        verify(cacheSupport).registerInvocation(any(), any(), any(), any(), any(), eq("1"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void putAllSchedulesRefreshOfScheduledCache() {
+        CustomizedRedisCache scheduled = (CustomizedRedisCache) manager.getCache("item#60#10#scheduled");
+        long start = System.currentTimeMillis();
+
+        scheduled.putAll(Map.of("1", "a", "2", "b"));
+
+        ArgumentCaptor<Map<String, Long>> refreshAts = ArgumentCaptor.forClass(Map.class);
+        verify(scheduler).schedule(eq("item"), refreshAts.capture());
+        assertThat(refreshAts.getValue()).containsOnlyKeys("item:1", "item:2");
+        // 过期前10秒刷新
+        assertThat(refreshAts.getValue().values()).allSatisfy(refreshAt ->
+                assertThat(refreshAt).isBetween(start + 50_000, System.currentTimeMillis() + 50_000));
+    }
+
+    @Test
+    void putAllDoesNotScheduleWithoutScheduledOption() {
+        cache.putAll(Map.of("1", "a"));
+
+        verify(scheduler, never()).schedule(any(), any(Map.class));
+    }
+
+    @Test
+    void unwrapsEnvelopeOnlyWhenEnabled() {
+        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig().serializeValuesWith(SerializationPair.byteArray());
+        CustomizedRedisCacheManager bytesManager = new CustomizedRedisCacheManager(cacheWriter, config, true, Map.of(),
+                mock(RedisTemplate.class), null, CacheStatisticsCollector.none());
+        bytesManager.afterPropertiesSet();
+        // 其他序列化器写入的数据恰好以信封标记开头
+        byte[] value = CacheValueEnvelope.wrap(new byte[]{'a'}, 0, 0);
+
+        assertThat(((CustomizedRedisCache) bytesManager.getCache("raw#60")).deserializeCacheValue(value)).isEqualTo(value);
+        assertThat(((CustomizedRedisCache) bytesManager.getCache("wrapped#60#0#envelope")).deserializeCacheValue(value))
+                .isEqualTo(new byte[]{'a'});
+    }
+
+    private CacheInvocationContext newContext(String cacheName) {
+        return new CacheInvocationContext(targetBean, targetMethod, new Class[]{String.class}, new Object[]{"1"}, Set.of(cacheName));
+    }
+}
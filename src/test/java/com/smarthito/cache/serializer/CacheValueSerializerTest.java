@@ -0,0 +1,59 @@
+package com.smarthito.cache.serializer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 只有开启压缩或者迁移期间才识别压缩数据，自定义序列化器以压缩标记开头的数据不会被误认为压缩数据
+ *
+ * @author yaojunguang
+ */
+class CacheValueSerializerTest {
+
+    /**
+     * 原样读写字节，输出以压缩标记开头
+     */
+    private final RedisSerializer<Object> raw = new RedisSerializer<>() {
+        @Override
+        public byte[] serialize(Object value) {
+            return (byte[]) value;
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) {
+            return bytes;
+        }
+    };
+
+    private final byte[] value = {CompressionCodec.MARKER, 0, 0, 0, 1, 'a', 'b'};
+
+    private final CacheValueSerializer serializer = new CacheValueSerializer(raw, raw,
+            new SmileRedisSerializer(Map.of()), new CompressionCodec(6, null)).withSerializer(raw);
+
+    @Test
+    void doesNotDecompressWithoutCompression() {
+        assertThat(serializer.deserialize(serializer.serialize(value))).isEqualTo(value);
+    }
+
+    @Test
+    void compressesValueStartingWithMarkerBelowThreshold() {
+        CacheValueSerializer compressed = serializer.withCompression(1024);
+
+        byte[] bytes = compressed.serialize(value);
+
+        assertThat(bytes).isNotEqualTo(value);
+        assertThat(compressed.deserialize(bytes)).isEqualTo(value);
+    }
+
+    @Test
+    void readsCompressedDataDuringMigration() {
+        byte[] bytes = serializer.withCompression(0).serialize(value);
+
+        assertThat(serializer.deserialize(bytes)).isNotEqualTo(value);
+        assertThat(serializer.withReadCompressed(true).deserialize(bytes)).isEqualTo(value);
+    }
+}